@@ -0,0 +1,26 @@
+package com.xxw.benchmark;
+
+import com.xxw.base.dao.BaseDaoImpl;
+
+/**
+ * 压测用的 DAO
+ *
+ * @author ivan
+ */
+public class BenchmarkDao extends BaseDaoImpl<BenchmarkEntity> {
+
+    public static final String TABLE_NAME = "tbl_benchmark";
+
+    public static final String CREATE_TABLE_SQL = "create table if not exists " + TABLE_NAME + " ("
+            + "id varchar(32) primary key, creater varchar(64), createTime varchar(32), updater varchar(64), updateTime varchar(32), "
+            + "name varchar(64), code varchar(32), description text, address varchar(128), phone varchar(32), email varchar(64), "
+            + "status varchar(16), category varchar(32), level int4, quantity int4, amount int8, price float8, weight float8, "
+            + "longitude float8, latitude float8, enabled bool, deleted bool, remark varchar(128), tags varchar(64), version int8)";
+
+    public static final String CREATE_INDEX_SQL = "create index if not exists idx_benchmark_category on " + TABLE_NAME + " (category, level)";
+
+    @Override
+    protected String getTableName() {
+        return TABLE_NAME;
+    }
+}
@@ -0,0 +1,143 @@
+package com.xxw.benchmark;
+
+import com.xxw.annotation.Table;
+import com.xxw.base.dao.Entity;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的宽表实体，字段类型与业务表相近
+ *
+ * @author ivan
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Table(name = "tbl_benchmark")
+public class BenchmarkEntity extends Entity<BenchmarkEntity> {
+
+    /**
+     * 自身声明的字段名，和 {@link #values()} 的顺序一致
+     */
+    public static final String[] DECLARED_COLUMNS = {"name", "code", "description", "address", "phone", "email", "status",
+            "category", "level", "quantity", "amount", "price", "weight", "longitude", "latitude", "enabled", "deleted",
+            "remark", "tags", "version"};
+
+    private String name;
+    private String code;
+    private String description;
+    private String address;
+    private String phone;
+    private String email;
+    private String status;
+    private String category;
+    private Integer level;
+    private Integer quantity;
+    private Long amount;
+    private Double price;
+    private Double weight;
+    private Double longitude;
+    private Double latitude;
+    private Boolean enabled;
+    private Boolean deleted;
+    private String remark;
+    private String tags;
+    private Long version;
+
+    /**
+     * 生成固定种子的测试数据
+     */
+    public static List<BenchmarkEntity> create(int rows) {
+        return create(0, rows, 0);
+    }
+
+    /**
+     * 生成固定种子的测试数据
+     *
+     * @param from    第一行的序号，id 由序号生成
+     * @param rows    行数
+     * @param payload description 字段的长度，用于调整行宽，小于等于0时使用默认文本
+     */
+    public static List<BenchmarkEntity> create(int from, int rows, int payload) {
+        Random random = new Random(from + rows);
+        List<BenchmarkEntity> list = new ArrayList<>(rows);
+        String now = new Timestamp(System.currentTimeMillis()).toString();
+        String padding = payload > 0 ? String.join("", Collections.nCopies(payload, "x")) : null;
+        for (int i = from; i < from + rows; i++) {
+            BenchmarkEntity entity = new BenchmarkEntity();
+            entity.setId(idOf(i));
+            entity.setCreater("benchmark");
+            entity.setCreateTime(now);
+            entity.setUpdater("benchmark");
+            entity.setUpdateTime(now);
+            entity.name = "name-" + i;
+            entity.code = "C" + random.nextInt(1_000_000);
+            entity.description = null == padding ? "description of row " + i + " with some padding text" : padding;
+            entity.address = "No." + random.nextInt(1000) + " Some Road, Some District";
+            entity.phone = "138" + (10_000_000 + random.nextInt(89_999_999));
+            entity.email = "user" + i + "@example.com";
+            entity.status = i % 3 == 0 ? "ACTIVE" : "INACTIVE";
+            entity.category = "category-" + (i % 16);
+            entity.level = i % 5;
+            entity.quantity = random.nextInt(10_000);
+            entity.amount = random.nextLong();
+            entity.price = random.nextDouble() * 1000;
+            entity.weight = random.nextDouble() * 100;
+            entity.longitude = 113 + random.nextDouble();
+            entity.latitude = 22 + random.nextDouble();
+            entity.enabled = random.nextBoolean();
+            entity.deleted = Boolean.FALSE;
+            entity.remark = i % 4 == 0 ? null : "remark " + i;
+            entity.tags = "a,b,c";
+            entity.version = (long) i;
+            list.add(entity);
+        }
+        return list;
+    }
+
+    /**
+     * 序号对应的 id
+     */
+    public static String idOf(long index) {
+        return String.format("%032x", index);
+    }
+
+    /**
+     * 自身声明字段的值
+     */
+    public Object[] values() {
+        return new Object[]{name, code, description, address, phone, email, status, category, level, quantity, amount, price,
+                weight, longitude, latitude, enabled, deleted, remark, tags, version};
+    }
+
+    /**
+     * 全部字段的值，顺序为 id、creater、createTime、updater、updateTime 加 {@link #DECLARED_COLUMNS}
+     */
+    public Object[] allValues() {
+        Object[] declared = values();
+        Object[] all = new Object[declared.length + 5];
+        all[0] = getId();
+        all[1] = getCreater();
+        all[2] = getCreateTime();
+        all[3] = getUpdater();
+        all[4] = getUpdateTime();
+        System.arraycopy(declared, 0, all, 5, declared.length);
+        return all;
+    }
+
+    public static String[] allColumns() {
+        String[] all = new String[DECLARED_COLUMNS.length + 5];
+        all[0] = "id";
+        all[1] = "creater";
+        all[2] = "createTime";
+        all[3] = "updater";
+        all[4] = "updateTime";
+        System.arraycopy(DECLARED_COLUMNS, 0, all, 5, DECLARED_COLUMNS.length);
+        return all;
+    }
+}
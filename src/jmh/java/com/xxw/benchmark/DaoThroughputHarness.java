@@ -0,0 +1,290 @@
+package com.xxw.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.xxw.base.dao.BaseDao;
+import com.xxw.base.query.Condition;
+import com.xxw.base.query.Direction;
+import com.xxw.base.query.Order;
+import com.xxw.base.query.Page;
+import com.xxw.base.query.PageResult;
+import com.xxw.base.query.Query;
+import com.xxw.base.util.DatabaseUtil;
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.LatencyHistogram;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BaseDaoImpl 端到端吞吐量压测<br>
+ * 默认在本地启动一个嵌入式 PostgreSQL（DAO 用到了 any(?) 数组、on conflict、update ... from (values ...)、COPY 等
+ * PostgreSQL 特有的语法，兼容模式的内存数据库跑不起来），也可以通过 -Dharness.url 指定已有的数据库。
+ * 依次压测 insertBatch、batchUpdate、searchByConditions、getObjectPage，
+ * 输出每秒操作数、p50/p99/p999 耗时、峰值活跃连接数，结果同时写成 json 便于回归对比<br>
+ * 参数（系统属性）：
+ * <pre>
+ * harness.url / harness.user / harness.password  已有数据库，不配置时启动嵌入式 PostgreSQL
+ * harness.threads   并发线程数，默认8，连接池大小与之相同
+ * harness.rows      预先导入的数据量，默认100000
+ * harness.batch     insertBatch、batchUpdate 每次操作的行数，默认100
+ * harness.payload   description 字段长度，用于调整行宽，默认0（约40字节）
+ * harness.warmup    每个场景预热秒数，默认5
+ * harness.duration  每个场景压测秒数，默认20
+ * harness.scenarios 要运行的场景，逗号分隔，默认全部
+ * harness.output    结果文件，默认 target/dao-harness.json
+ * </pre>
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.main=com.xxw.benchmark.DaoThroughputHarness -Djmh.jvmArgs="-Dharness.threads=16"
+ *
+ * @author ivan
+ */
+public final class DaoThroughputHarness {
+
+    private static final int CATEGORIES = 16;
+
+    private static final int LEVELS = 5;
+
+    private final int threads = Integer.getInteger("harness.threads", 8);
+
+    private final int rows = Integer.getInteger("harness.rows", 100_000);
+
+    private final int batch = Integer.getInteger("harness.batch", 100);
+
+    private final int payload = Integer.getInteger("harness.payload", 0);
+
+    private final int warmup = Integer.getInteger("harness.warmup", 5);
+
+    private final int duration = Integer.getInteger("harness.duration", 20);
+
+    private final BenchmarkDao dao = new BenchmarkDao();
+
+    /**
+     * insertBatch 场景下一个新行的序号，从预先导入的数据之后开始
+     */
+    private final AtomicLong nextIndex = new AtomicLong();
+
+    /**
+     * 压测场景，返回读写的行数，失败返回小于0的值
+     */
+    private interface Operation {
+        int run(ThreadLocalRandom random) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new DaoThroughputHarness().run();
+    }
+
+    private void run() throws Exception {
+        EmbeddedPostgres postgres = null;
+        HikariConfig config = new HikariConfig();
+        String url = System.getProperty("harness.url");
+        if (null == url) {
+            postgres = EmbeddedPostgres.start();
+            url = postgres.getJdbcUrl("postgres", "postgres");
+            config.setUsername("postgres");
+        } else {
+            config.setUsername(System.getProperty("harness.user", "postgres"));
+            config.setPassword(System.getProperty("harness.password", ""));
+        }
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(threads);
+        config.setMinimumIdle(threads);
+        config.setPoolName("harness");
+        try (HikariDataSource dataSource = new HikariDataSource(config)) {
+            DatasourceUtil.getInstance().use(dataSource);
+            prepare();
+            Map<String, Operation> scenarios = scenarios();
+            String selected = System.getProperty("harness.scenarios");
+            if (null != selected) {
+                scenarios.keySet().retainAll(Arrays.asList(selected.split(",")));
+            }
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Map.Entry<String, Operation> scenario : scenarios.entrySet()) {
+                results.add(measure(scenario.getKey(), scenario.getValue()));
+            }
+            write(results);
+        } finally {
+            if (null != postgres) {
+                postgres.close();
+            }
+        }
+    }
+
+    private Map<String, Operation> scenarios() {
+        Map<String, Operation> scenarios = new LinkedHashMap<>();
+        scenarios.put("insertBatch", random -> {
+            long from = nextIndex.getAndAdd(batch);
+            int result = dao.insertBatch(BenchmarkEntity.create((int) from, batch, payload));
+            return result == 0 ? batch : -1;
+        });
+        scenarios.put("batchUpdate", random -> {
+            List<BenchmarkEntity> updates = new ArrayList<>(batch);
+            for (int i = 0; i < batch; i++) {
+                BenchmarkEntity entity = new BenchmarkEntity();
+                entity.setId(BenchmarkEntity.idOf(random.nextInt(rows)));
+                entity.setPrice(random.nextDouble() * 1000);
+                entity.setStatus(random.nextBoolean() ? "ACTIVE" : "INACTIVE");
+                entity.setVersion(random.nextLong());
+                updates.add(entity);
+            }
+            return dao.batchUpdate(updates);
+        });
+        scenarios.put("searchByConditions", random -> {
+            Map<String, Object> conditions = new HashMap<>();
+            conditions.put("category", "category-" + random.nextInt(CATEGORIES));
+            conditions.put("level", random.nextInt(LEVELS));
+            List<BenchmarkEntity> list = dao.searchByConditionsWithoutConnection(conditions);
+            return null == list ? -1 : list.size();
+        });
+        scenarios.put("getObjectPage", random -> {
+            Query query = new Query();
+            query.setFields(Collections.singletonList("*"));
+            query.setTableNames(new String[]{BenchmarkDao.TABLE_NAME});
+            query.setWheres(new Condition[]{new Condition("category", "=", "category-" + random.nextInt(CATEGORIES))});
+            query.setOrders(new Order[]{new Order("id", Direction.ASC)});
+            query.setPage(new Page(1 + random.nextInt(50), 20));
+            PageResult<BenchmarkEntity> page = BaseDao.getObjectPage(query, BenchmarkEntity.class);
+            return null == page ? -1 : page.getData().size();
+        });
+        return scenarios;
+    }
+
+    /**
+     * 建表并用 COPY 导入初始数据
+     */
+    private void prepare() throws Exception {
+        Connection conn = DatasourceUtil.getInstance().getConn();
+        try {
+            DatabaseUtil.executeSql(conn, "drop table if exists " + BenchmarkDao.TABLE_NAME);
+            DatabaseUtil.executeSql(conn, BenchmarkDao.CREATE_TABLE_SQL);
+            DatabaseUtil.executeSql(conn, BenchmarkDao.CREATE_INDEX_SQL);
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        long start = System.nanoTime();
+        int chunk = 10_000;
+        for (int from = 0; from < rows; from += chunk) {
+            int count = Math.min(chunk, rows - from);
+            if (dao.insertBatchByCopy(BenchmarkEntity.create(from, count, payload)) != 0) {
+                throw new IllegalStateException("导入初始数据失败");
+            }
+        }
+        conn = DatasourceUtil.getInstance().getConn();
+        try {
+            DatabaseUtil.executeSql(conn, "analyze " + BenchmarkDao.TABLE_NAME);
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        nextIndex.set(rows);
+        System.out.printf("导入 %d 行，耗时 %d ms%n", rows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Map<String, Object> measure(String name, Operation operation) throws InterruptedException {
+        // 预热不计入统计
+        drive(operation, warmup, new LatencyHistogram(), new LongAdder(), new LongAdder(), new AtomicInteger());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder rowCount = new LongAdder();
+        LongAdder errors = new LongAdder();
+        AtomicInteger peakConnections = new AtomicInteger();
+        DatasourceUtil.getInstance().getAcquireTime().reset();
+        long elapsed = drive(operation, duration, latency, rowCount, errors, peakConnections);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", name);
+        result.put("threads", threads);
+        result.put("datasetRows", rows);
+        result.put("batch", batch);
+        result.put("payload", payload);
+        result.put("ops", latency.getCount());
+        result.put("opsPerSec", latency.getCount() * 1e9 / elapsed);
+        result.put("rowsPerSec", rowCount.sum() * 1e9 / elapsed);
+        result.put("errors", errors.sum());
+        result.put("meanMillis", latency.getMeanMillis());
+        result.put("p50Millis", latency.getPercentileMillis(0.5));
+        result.put("p99Millis", latency.getPercentileMillis(0.99));
+        result.put("p999Millis", latency.getPercentileMillis(0.999));
+        result.put("maxMillis", latency.getMaxMillis());
+        result.put("peakConnections", peakConnections.get());
+        result.put("acquireP99Millis", DatasourceUtil.getInstance().getAcquireTime().getPercentileMillis(0.99));
+        System.out.printf("%-20s %10.1f ops/s  p50=%.3fms p99=%.3fms p999=%.3fms  connections=%d errors=%d%n", name,
+                (Double) result.get("opsPerSec"), latency.getPercentileMillis(0.5), latency.getPercentileMillis(0.99),
+                latency.getPercentileMillis(0.999), peakConnections.get(), errors.sum());
+        return result;
+    }
+
+    /**
+     * 用 threads 个线程反复执行操作 seconds 秒，同时每5毫秒采样一次活跃连接数
+     *
+     * @return 实际耗时（纳秒）
+     */
+    private long drive(Operation operation, int seconds, LatencyHistogram latency, LongAdder rowCount, LongAdder errors,
+                       AtomicInteger peakConnections) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        int result;
+                        try {
+                            result = operation.run(random);
+                        } catch (Exception e) {
+                            result = -1;
+                        }
+                        latency.record(System.nanoTime() - begin);
+                        if (result < 0) {
+                            errors.increment();
+                        } else {
+                            rowCount.add(result);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "harness-" + i);
+            worker.start();
+        }
+        while (!done.await(5, TimeUnit.MILLISECONDS)) {
+            peakConnections.accumulateAndGet(DatasourceUtil.getInstance().getActiveConnections(), Math::max);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void write(List<Map<String, Object>> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", System.currentTimeMillis());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        report.put("results", results);
+        Path output = Paths.get(System.getProperty("harness.output", "target/dao-harness.json"));
+        if (null != output.getParent()) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.write(output, JSON.toJSONString(report, SerializerFeature.PrettyFormat).getBytes(StandardCharsets.UTF_8));
+        System.out.println("结果已写入 " + output.toAbsolutePath());
+    }
+}
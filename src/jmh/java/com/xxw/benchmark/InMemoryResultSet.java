@@ -0,0 +1,128 @@
+package com.xxw.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内存里的只进 ResultSet，不需要数据库就能测量结果集映射<br>
+ * 通过动态代理实现，只支持映射代码用到的方法；代理本身的开销对所有被测方法相同
+ *
+ * @author ivan
+ */
+public final class InMemoryResultSet {
+
+    private InMemoryResultSet() {
+    }
+
+    /**
+     * @param columns 列名
+     * @param rows    每行的值，顺序与列名一致
+     * @return 新的 ResultSet，每次迭代都需要重新创建
+     */
+    public static ResultSet of(String[] columns, List<Object[]> rows) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            indexes.put(columns[i], i);
+            indexes.putIfAbsent(columns[i].toLowerCase(), i);
+        }
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return columns.length;
+                        case "getColumnName":
+                        case "getColumnLabel":
+                            return columns[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return sqlType(rows, (Integer) args[0] - 1);
+                        default:
+                            throw new SQLFeatureNotSupportedException(method.getName());
+                    }
+                });
+        int[] cursor = {-1};
+        Object[] lastValue = new Object[1];
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    switch (name) {
+                        case "next":
+                            return ++cursor[0] < rows.size();
+                        case "getMetaData":
+                            return metaData;
+                        case "wasNull":
+                            return null == lastValue[0];
+                        case "close":
+                            return null;
+                        case "isClosed":
+                            return false;
+                        default:
+                            break;
+                    }
+                    if (!name.startsWith("get") || null == args || args.length != 1) {
+                        throw new SQLFeatureNotSupportedException(name);
+                    }
+                    int index = args[0] instanceof Integer ? (Integer) args[0] - 1 : indexes.get(String.valueOf(args[0]));
+                    Object value = rows.get(cursor[0])[index];
+                    lastValue[0] = value;
+                    return convert(method.getReturnType(), value);
+                });
+    }
+
+    /**
+     * 按该列第一个非空值推断 java.sql.Types，ColumnarResult 据此选择列的存储方式
+     */
+    private static int sqlType(List<Object[]> rows, int index) {
+        for (Object[] row : rows) {
+            Object value = row[index];
+            if (null == value) {
+                continue;
+            }
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return Types.INTEGER;
+            } else if (value instanceof Long) {
+                return Types.BIGINT;
+            } else if (value instanceof Double || value instanceof Float) {
+                return Types.DOUBLE;
+            } else if (value instanceof String) {
+                return Types.VARCHAR;
+            }
+            return Types.OTHER;
+        }
+        return Types.OTHER;
+    }
+
+    private static Object convert(Class<?> type, Object value) {
+        if (type == Object.class) {
+            return value;
+        }
+        if (type == String.class) {
+            return null == value ? null : value.toString();
+        }
+        if (type.isPrimitive()) {
+            if (type == boolean.class) {
+                return null != value && (Boolean) value;
+            }
+            Number number = null == value ? 0 : (Number) value;
+            if (type == int.class) {
+                return number.intValue();
+            } else if (type == long.class) {
+                return number.longValue();
+            } else if (type == double.class) {
+                return number.doubleValue();
+            } else if (type == float.class) {
+                return number.floatValue();
+            } else if (type == short.class) {
+                return number.shortValue();
+            } else if (type == byte.class) {
+                return number.byteValue();
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,111 @@
+package com.xxw.benchmark;
+
+import com.xxw.base.dao.EntityRowMapper;
+import com.xxw.base.util.ColumnarResult;
+import com.xxw.base.util.CompactRow;
+import com.xxw.base.util.JavaBeanUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果集映射为实体、Map 的开销，ResultSet 为内存实现，不包含网络与驱动解码
+ *
+ * @author ivan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultSetMappingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    private String[] allColumns;
+
+    private List<Object[]> allRows;
+
+    private List<Object[]> declaredRows;
+
+    /**
+     * 已经读成 Map 的行，与 DatabaseUtil.executeSearch(conn, sql, params) 的返回值一致
+     */
+    private List<Map<String, Object>> rowMaps;
+
+    @Setup
+    public void setUp() throws SQLException {
+        List<BenchmarkEntity> entities = BenchmarkEntity.create(rows);
+        allColumns = BenchmarkEntity.allColumns();
+        allRows = new ArrayList<>(rows);
+        declaredRows = new ArrayList<>(rows);
+        for (BenchmarkEntity entity : entities) {
+            allRows.add(entity.allValues());
+            declaredRows.add(entity.values());
+        }
+        rowMaps = readRowMaps();
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> entityRowMapper() throws SQLException {
+        return EntityRowMapper.of(BenchmarkEntity.class).mapRows(InMemoryResultSet.of(allColumns, allRows));
+    }
+
+    /**
+     * JavaBeanUtil 只能映射类自身声明的字段，结果集只包含这些列
+     */
+    @Benchmark
+    public List<BenchmarkEntity> javaBeanUtilResultSetToList() throws Exception {
+        return JavaBeanUtil.resultSetToList(InMemoryResultSet.of(BenchmarkEntity.DECLARED_COLUMNS, declaredRows), BenchmarkEntity.class);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> readRowMaps() throws SQLException {
+        ResultSet resultSet = InMemoryResultSet.of(allColumns, allRows);
+        // 与 DatabaseUtil.executeSearch 一致：列信息只解析一次
+        CompactRow.Header header = CompactRow.Header.of(resultSet.getMetaData());
+        List<Map<String, Object>> result = new ArrayList<>(rows);
+        while (resultSet.next()) {
+            result.add(CompactRow.read(resultSet, header));
+        }
+        return result;
+    }
+
+    /**
+     * 与 readRowMaps 读取同样的结果集，按列存储
+     */
+    @Benchmark
+    public ColumnarResult readColumnar() throws SQLException {
+        return ColumnarResult.read(InMemoryResultSet.of(allColumns, allRows), rows);
+    }
+
+    /**
+     * List&lt;Map&gt; 转实体：每行 CompactRow 按列名查找属性后回填，即先查 Map 再转实体的路径
+     */
+    @Benchmark
+    public List<BenchmarkEntity> mapRowMaps() {
+        EntityRowMapper<BenchmarkEntity> rowMapper = EntityRowMapper.of(BenchmarkEntity.class);
+        List<BenchmarkEntity> result = new ArrayList<>(rowMaps.size());
+        for (Map<String, Object> row : rowMaps) {
+            result.add(rowMapper.mapRow(row));
+        }
+        return result;
+    }
+}
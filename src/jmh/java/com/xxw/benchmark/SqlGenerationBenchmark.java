@@ -0,0 +1,60 @@
+package com.xxw.benchmark;
+
+import com.xxw.base.dao.SqlAndParamBean;
+import com.xxw.base.util.SqlUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量插入、批量更新的sql与参数生成
+ *
+ * @author ivan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlGenerationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    private List<BenchmarkEntity> entities;
+
+    private List<Object[]> batchParams;
+
+    @Setup
+    public void setUp() throws IllegalAccessException {
+        entities = BenchmarkEntity.create(rows);
+        batchParams = SqlUtil.generateBatchInsertSqlAndParam(entities).getBatchParams();
+    }
+
+    @Benchmark
+    public SqlAndParamBean generateBatchInsertSqlAndParam() throws IllegalAccessException {
+        return SqlUtil.generateBatchInsertSqlAndParam(entities);
+    }
+
+    @Benchmark
+    public SqlAndParamBean generateBatchUpdateSqlAndParam() {
+        return SqlUtil.generateBatchUpdateSqlAndParam(entities);
+    }
+
+    @Benchmark
+    public List<Object[]> transForm() {
+        return SqlUtil.transForm(batchParams);
+    }
+}
@@ -0,0 +1,50 @@
+package com.xxw.base.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link IBaseDao} 的异步版本，每个操作在 {@link DaoExecutor} 上执行并返回 CompletableFuture，
+ * 方法抛出的异常使 future 异常完成；在途任务已满时调用线程阻塞等待<br>
+ * 只提供自己获取连接的方法：传入连接的方法由调用方控制事务，跨线程使用同一个连接没有意义
+ *
+ * @author ivan
+ */
+public interface AsyncBaseDao<T> {
+
+    /**
+     * 包装同步DAO
+     */
+    static <T> AsyncBaseDao<T> of(IBaseDao<T> dao) {
+        return new AsyncBaseDaoImpl<>(dao);
+    }
+
+    CompletableFuture<Integer> insert(T domain);
+
+    CompletableFuture<Integer> insertBatch(List<T> domains);
+
+    CompletableFuture<Integer> insertBatchByCopy(List<T> domains);
+
+    CompletableFuture<Integer> deleteByConditions(Map<String, Object> conditions);
+
+    CompletableFuture<List<T>> searchByConditions(Map<String, Object> conditions);
+
+    CompletableFuture<T> searchOneByConditions(Map<String, Object> conditions);
+
+    /**
+     * 游标逐行查询，consumer 在执行任务的线程上回调
+     */
+    CompletableFuture<Integer> searchByConditions(Map<String, Object> conditions, int fetchSize, Consumer<? super T> consumer);
+
+    CompletableFuture<List<T>> batchSearchByField(String field, List<?> fieldValues);
+
+    CompletableFuture<Integer> batchDeleteByParam(String field, List<String> params);
+
+    CompletableFuture<Integer> update(T domain, String primaryFiledName);
+
+    CompletableFuture<Integer> batchUpdate(List<T> domain);
+
+    CompletableFuture<Integer> batchUpdateAllField(T domain, String primaryFiledName);
+}
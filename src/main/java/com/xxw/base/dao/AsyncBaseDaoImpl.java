@@ -0,0 +1,81 @@
+package com.xxw.base.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 把同步DAO的调用提交到 {@link DaoExecutor#supplyAsync(java.util.concurrent.Callable)}
+ *
+ * @author ivan
+ */
+public class AsyncBaseDaoImpl<T> implements AsyncBaseDao<T> {
+
+    private final IBaseDao<T> dao;
+
+    public AsyncBaseDaoImpl(IBaseDao<T> dao) {
+        this.dao = Objects.requireNonNull(dao, "dao");
+    }
+
+    @Override
+    public CompletableFuture<Integer> insert(T domain) {
+        return DaoExecutor.supplyAsync(() -> dao.insert(domain));
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertBatch(List<T> domains) {
+        return DaoExecutor.supplyAsync(() -> dao.insertBatch(domains));
+    }
+
+    @Override
+    public CompletableFuture<Integer> insertBatchByCopy(List<T> domains) {
+        return DaoExecutor.supplyAsync(() -> dao.insertBatchByCopy(domains));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteByConditions(Map<String, Object> conditions) {
+        return DaoExecutor.supplyAsync(() -> dao.deleteByConditions(conditions));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> searchByConditions(Map<String, Object> conditions) {
+        return DaoExecutor.supplyAsync(() -> dao.searchByConditionsWithoutConnection(conditions));
+    }
+
+    @Override
+    public CompletableFuture<T> searchOneByConditions(Map<String, Object> conditions) {
+        return DaoExecutor.supplyAsync(() -> dao.searchOneByConditionsWithoutConnection(conditions));
+    }
+
+    @Override
+    public CompletableFuture<Integer> searchByConditions(Map<String, Object> conditions, int fetchSize, Consumer<? super T> consumer) {
+        return DaoExecutor.supplyAsync(() -> dao.searchByConditions(conditions, fetchSize, consumer));
+    }
+
+    @Override
+    public CompletableFuture<List<T>> batchSearchByField(String field, List<?> fieldValues) {
+        return DaoExecutor.supplyAsync(() -> dao.batchSearchByFieldWithoutConnection(field, fieldValues));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchDeleteByParam(String field, List<String> params) {
+        return DaoExecutor.supplyAsync(() -> dao.batchDeleteByParam(field, params));
+    }
+
+    @Override
+    public CompletableFuture<Integer> update(T domain, String primaryFiledName) {
+        return DaoExecutor.supplyAsync(() -> dao.update(domain, primaryFiledName));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchUpdate(List<T> domain) {
+        return DaoExecutor.supplyAsync(() -> dao.batchUpdate(domain));
+    }
+
+    @Override
+    public CompletableFuture<Integer> batchUpdateAllField(T domain, String primaryFiledName) {
+        return DaoExecutor.supplyAsync(() -> dao.batchUpdateAllField(domain, primaryFiledName));
+    }
+}
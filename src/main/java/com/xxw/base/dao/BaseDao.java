@@ -1,5 +1,8 @@
 package com.xxw.base.dao;
 
+import com.xxw.base.query.CountMode;
+import com.xxw.base.query.KeysetToken;
+import com.xxw.base.query.Order;
 import com.xxw.base.query.Page;
 import com.xxw.base.query.PageResult;
 import com.xxw.base.query.Query;
@@ -10,14 +13,28 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Slf4j
 @UtilityClass
 public class BaseDao {
 
+    /**
+     * 只有一张表、没有条件的 from 语句
+     */
+    private static final Pattern SINGLE_TABLE_PATTERN = Pattern.compile("from\\s+([\\w.]+)\\s*");
+
+    /**
+     * 插入或更新时只在插入写入的字段
+     */
+    private static final Set<String> INSERT_ONLY_COLUMNS = new HashSet<>(Arrays.asList("creater", "createTime"));
+
+    private static final String RELTUPLES_SQL = "select coalesce((select least(reltuples, 2147483647)::int from pg_class where oid = to_regclass(?) and reltuples >= 0), -1)";
+
     /**
      * 单表插入，只支持表名下划线并且前缀是tbl_对应的实体是驼峰命名规则
      *
@@ -32,6 +49,7 @@ public class BaseDao {
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateInsertSqlAndParam(object);
             conn.setAutoCommit(Boolean.TRUE);
             result = DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+            ResultCache.invalidate(SqlUtil.getTableNameByClass(object.getClass()));
         } catch (Exception e) {
             log.error("saveObject异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -99,7 +117,7 @@ public class BaseDao {
     public int save(Connection conn, String tableName, Object obj) {
         Map<String, Object> parameterMap = (Map<String, Object>) JSON.parse(JSON.toJSONString(obj));
         SqlAndParamBean sqlAndParamBean = SqlUtil.generateInsertSqlAndParam(tableName, parameterMap);
-        return DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+        return invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
     }
 
     /**
@@ -125,16 +143,65 @@ public class BaseDao {
      * @throws IllegalAccessException
      */
     public int insertBatch(Connection conn, String tableName, List<?> obj) throws IllegalArgumentException, IllegalAccessException {
-        SqlAndParamBean sqlAndParamBean = SqlUtil.generateBatchInsertSqlAndParam(tableName, obj);
-        return DatabaseUtil.executeBatchSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getBatchParams());
+        return insertBatch(conn, tableName, obj, BatchInsertWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * 分块批量插入，每块生成一条多行 values 语句<br>
+     * 连接是自动提交时所有块在一个事务里执行，任意一块失败整体回滚，返回-1时没有插入任何行，重试不会重复插入
+     *
+     * @param conn
+     * @param tableName
+     * @param obj
+     * @param chunkSize 每块的行数，实际行数还会受绑定参数上限限制
+     * @return 插入的总行数，失败返回-1
+     */
+    public int insertBatch(Connection conn, String tableName, List<?> obj, int chunkSize) {
+        boolean autoCommit = false;
+        try {
+            autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            int[] counts = new BatchInsertWriter(chunkSize).write(conn, tableName, obj);
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            if (autoCommit) {
+                conn.commit();
+            }
+            return invalidate(tableName, total);
+        } catch (Exception e) {
+            if (autoCommit) {
+                try {
+                    conn.rollback();
+                } catch (SQLException e2) {
+                    log.error("insertBatch事务回滚错误: {}", ExceptionUtil.buildErrorMessage(e2));
+                }
+            }
+            log.error("insertBatch异常: {}", ExceptionUtil.buildErrorMessage(e));
+            return -1;
+        } finally {
+            if (autoCommit) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    log.error("insertBatch异常: {}", ExceptionUtil.buildErrorMessage(e));
+                }
+            }
+        }
     }
 
     public int insertBatch(List<?> obj, String tableName) throws IllegalArgumentException, IllegalAccessException {
-        SqlAndParamBean sqlAndParamBean = SqlUtil.generateBatchInsertSqlAndParam(tableName, obj);
+        return insertBatch(obj, tableName, BatchInsertWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    public int insertBatch(List<?> obj, String tableName, int chunkSize) {
         Connection conn = getConnection();
         int batchSql = -1;
         try {
-            batchSql = DatabaseUtil.executeBatchSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getBatchParams());
+            batchSql = insertBatch(conn, tableName, obj, chunkSize);
         } catch (Exception e) {
             log.error(ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -143,6 +210,38 @@ public class BaseDao {
         return batchSql;
     }
 
+    /**
+     * 使用 PostgreSQL COPY ... FROM STDIN 批量插入，适合几万行以上的数据导入
+     *
+     * @param conn
+     * @param tableName
+     * @param obj
+     * @return 插入的行数，失败返回-1
+     */
+    public int copyBatch(Connection conn, String tableName, List<?> obj) {
+        int result = -1;
+        try {
+            result = invalidate(tableName, (int) CopyUtil.copyIn(conn, tableName, obj));
+        } catch (Exception e) {
+            log.error("copyBatch异常: {}", ExceptionUtil.buildErrorMessage(e));
+        }
+        return result;
+    }
+
+    public int copyBatch(List<?> obj, String tableName) {
+        int result = -1;
+        Connection conn = getConnection();
+        try {
+            conn.setAutoCommit(Boolean.TRUE);
+            result = copyBatch(conn, tableName, obj);
+        } catch (Exception e) {
+            log.error("copyBatch异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        return result;
+    }
+
     /**
      * 批量插入
      *
@@ -153,8 +252,7 @@ public class BaseDao {
      * @throws IllegalAccessException
      */
     public int insertBatch(Connection conn, List<?> obj) throws IllegalArgumentException, IllegalAccessException {
-        SqlAndParamBean sqlAndParamBean = SqlUtil.generateBatchInsertSqlAndParam(obj);
-        return DatabaseUtil.executeBatchSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getBatchParams());
+        return insertBatch(conn, SqlUtil.getTableNameByClass(obj.get(0).getClass()), obj);
     }
 
     /**
@@ -170,12 +268,12 @@ public class BaseDao {
      */
     public int update(Connection conn, String tableName, Map<String, Object> conditions, String primaryFileName) {
         SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndParam(tableName, conditions, primaryFileName);
-        return DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+        return invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
     }
 
     public static int update(Connection conn, String tableName, Object object, Map<String, Object> conditions) throws Exception {
         SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndParam(tableName, object, conditions);
-        return DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+        return invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
     }
 
     /**
@@ -224,7 +322,7 @@ public class BaseDao {
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndParam(object, primaryFiledName);
             // 注意在内部的话
             conn.setAutoCommit(Boolean.TRUE);
-            result = DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+            result = invalidate(SqlUtil.getTableNameByClass(object.getClass()), DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
         } catch (Exception e) {
             log.error("updateObject异常: {]", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -238,7 +336,7 @@ public class BaseDao {
         Connection conn = getConnection();
         try {
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndParam(object, primaryFiledName, tableName);
-            result = DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+            result = invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
         } catch (Exception e) {
             log.error("updateObject异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -251,7 +349,7 @@ public class BaseDao {
         int result = -1;
         try {
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndParam(object, primaryFiledName, tableName);
-            result = DatabaseUtil.executeSql(connection, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+            result = invalidate(tableName, DatabaseUtil.executeSql(connection, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
         } catch (Exception e) {
             log.error("updateObject异常: {}", ExceptionUtil.buildErrorMessage(e));
         }
@@ -263,7 +361,7 @@ public class BaseDao {
         Connection conn = getConnection();
         try {
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateUpdateSqlAndAllParam(object, primaryFiledName, tableName);
-            result = DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+            result = invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
         } catch (Exception e) {
             log.error("updateObject异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -318,13 +416,61 @@ public class BaseDao {
      * @throws IllegalAccessException
      */
     public int batchUpdate(Connection conn, List<?> objects) throws IllegalArgumentException, IllegalAccessException {
-        SqlAndParamBean sqlAndParamBean = SqlUtil.generateBatchUpdateSqlAndParam(objects);
-        return DatabaseUtil.executeBatchSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getBatchParams());
+        if (CollectionUtil.isEmpty(objects)) {
+            return 0;
+        }
+        // 更新的字段以第一个对象中值不为空的字段为准
+        return bulkUpdate(conn, objects, updateColumns(objects.subList(0, 1), false), false);
     }
 
     public int batchAllUpdate(Connection conn, List<?> objects) throws IllegalArgumentException, IllegalAccessException {
-        SqlAndParamBean sqlAndParamBean = SqlUtil.generateBatchUpdateSqlAndAllParam(objects);
-        return DatabaseUtil.executeBatchSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getBatchParams());
+        if (CollectionUtil.isEmpty(objects)) {
+            return 0;
+        }
+        return bulkUpdate(conn, objects, updateColumns(objects, true), false);
+    }
+
+    /**
+     * 按主键分块批量更新，每块一条 update ... from (values ...) 语句
+     *
+     * @param conn             数据库连接
+     * @param objects          实体对象集合
+     * @param columns          要更新的字段
+     * @param keepStoredOnNull 值为null时是否保留数据库里原来的值
+     * @return 更新的行数，失败返回-1
+     */
+    public int bulkUpdate(Connection conn, List<?> objects, List<EntityMeta.Column> columns, boolean keepStoredOnNull) {
+        try {
+            String tableName = EntityMeta.of(objects.get(0).getClass()).getTableName();
+            return invalidate(tableName, Arrays.stream(BatchInsertWriter.getDefault().update(conn, tableName, objects, columns, keepStoredOnNull)).sum());
+        } catch (SQLException e) {
+            log.error("bulkUpdate异常: {}", ExceptionUtil.buildErrorMessage(e));
+            return -1;
+        }
+    }
+
+    /**
+     * 要更新的字段：allFields 为true时是所有非主键字段，否则是在任意一个对象里值不为空的非主键字段
+     */
+    private List<EntityMeta.Column> updateColumns(List<?> objects, boolean allFields) {
+        List<EntityMeta.Column> columns = new ArrayList<>();
+        for (EntityMeta.Column column : EntityMeta.of(objects.get(0).getClass()).getColumns()) {
+            if (column.isPrimaryKey()) {
+                continue;
+            }
+            if (allFields) {
+                columns.add(column);
+                continue;
+            }
+            for (Object object : objects) {
+                Object value = column.getValue(object);
+                if (value != null && StringUtils.isNotEmpty(value.toString())) {
+                    columns.add(column);
+                    break;
+                }
+            }
+        }
+        return columns;
     }
 
     /**
@@ -350,85 +496,73 @@ public class BaseDao {
         if (CollectionUtil.isEmpty(objects))
             return null;
 
-        int saveResult = -1;
-        int updateResult = -1;
-
-        AtomicReference<Boolean> saveFlag = new AtomicReference<>(false);
-        AtomicReference<Boolean> updateFlag = new AtomicReference<>(false);
-
-        List<T> saveObjects = new ArrayList<>();
-        List<T> updateObjects = new ArrayList<>();
-
+        Connection conn = getConnection();
         try {
-            objects.forEach(object -> {
-
-                if (Objects.isNull(object))
-                    return;
-
-                if (object.getId() == null || "".equals(object.getId().trim())) {
-                    object.setId(IDUtil.generateUUID());
-                    object.setCreateTime(DateUtil.now());
-                    saveFlag.set(true);
-                    saveObjects.add(object);
-                } else {
-                    object.setCreater(null);
-                    object.setCreateTime(null);
-                    object.setUpdateTime(DateUtil.now());
-                    updateObjects.add(object);
-                    updateFlag.set(true);
-                }
-            });
-
-            if (saveFlag.get()) {
-                saveResult = BaseDao.batchSave(saveObjects);
-            }
-            if (updateFlag.get()) {
-                updateResult = BaseDao.batchUpdate(updateObjects);
-            }
+            return upsert(conn, objects);
         } catch (Exception e) {
-            log.error(ExceptionUtil.buildErrorMessage(e));
+            log.error("batchSaveOrUpdate异常: {}", ExceptionUtil.buildErrorMessage(e));
+            return null;
+        } finally {
+            DatasourceUtil.close(conn);
         }
+    }
 
-        /**新增、修改成功**/
-        if (saveResult > 0 && updateResult > 0) {
-            saveObjects.addAll(updateObjects);
-            return saveObjects;
-        }
+    /**
+     * 新增和修改合并为 insert ... on conflict (id) do update 分块写入：没有id的对象生成id，有id的对象设置修改时间；
+     * 创建人、创建时间只在插入时写入，冲突更新时保留原值
+     *
+     * @param conn    数据库连接
+     * @param objects 实体对象集合
+     * @return 写入的对象，没有写入任何行时返回null
+     * @throws SQLException 执行异常
+     */
+    private <T extends Entity> List<T> upsert(Connection conn, List<T> objects) throws SQLException {
+        String now = DateUtil.now();
+        List<T> upsertObjects = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            if (Objects.isNull(object))
+                continue;
 
-        /**新增成功**/
-        if (saveResult > 0 && updateResult <= 0) {
-            return saveObjects;
+            if (object.getId() == null || "".equals(object.getId().trim())) {
+                object.setId(IDUtil.generateUUID());
+            } else {
+                object.setUpdateTime(now);
+            }
+            if (null == object.getCreateTime()) {
+                object.setCreateTime(now);
+            }
+            upsertObjects.add(object);
         }
-
-        /**修改成功**/
-        if (saveResult <= 0 && updateResult > 0) {
-            return updateObjects;
+        if (upsertObjects.isEmpty()) {
+            return null;
         }
-
-        return null;
+        String tableName = SqlUtil.getTableNameByClass(upsertObjects.get(0).getClass());
+        int[] counts = BatchInsertWriter.getDefault().upsert(conn, tableName, upsertObjects, INSERT_ONLY_COLUMNS);
+        return invalidate(tableName, Arrays.stream(counts).sum()) > 0 ? upsertObjects : null;
     }
 
     /**
      * @return int    返回执行的行数
      * @Title: batchUpdateByStatement
-     * @Description: Statement批量更新
+     * @Description: 按主键分块批量更新，值为null的字段保留原来的值，整批在一个事务里
      */
     public int batchUpdateByStatement(List objects) {
-        int[] object = {};
-        Statement stm = null;
-        List<String> sqlStringList = SqlUtil.generateBatchUpdateSqlList(objects);
+        if (CollectionUtil.isEmpty(objects)) {
+            return 0;
+        }
+        int object = -1;
         Connection conn = getConnection();
         try {
-            stm = conn.createStatement();
             // 关闭自动提交，即开启事务
             conn.setAutoCommit(false);
-            for (String sql : sqlStringList) {
-                stm.addBatch(sql);
+            // 每行只更新值不为null的字段
+            object = bulkUpdate(conn, objects, updateColumns(objects, false), true);
+            if (object < 0) {
+                conn.rollback();
+            } else {
+                // 执行完后，手动提交事务
+                conn.commit();
             }
-            // 最后执行
-            object = stm.executeBatch();
-            // 执行完后，手动提交事务
-            conn.commit();
         } catch (SQLException e) {
             try {
                 // 发生异常，事务回滚！
@@ -437,15 +571,16 @@ public class BaseDao {
                 log.error("更新失败，事务回滚错误... {}", ExceptionUtil.buildErrorMessage(e));
             }
             log.error("batchUpdateByStatement异常: {}", ExceptionUtil.buildErrorMessage(e));
+            object = -1;
         } finally {
             try {
                 conn.setAutoCommit(true);
             } catch (SQLException e) {
                 log.error("batchUpdateByStatement异常: {}", ExceptionUtil.buildErrorMessage(e));
             }
-            DatasourceUtil.close(conn, stm, null);
+            DatasourceUtil.close(conn);
         }
-        return object.length;
+        return object;
     }
 
 
@@ -474,7 +609,8 @@ public class BaseDao {
         int result = 0;
         Connection connection = getConnection();
         try {
-            result = deleteBatchHard(connection, SqlUtil.generateBatchDeleteSql(clazz, idFieldName, objects), objects);
+            String tableName = SqlUtil.getTableNameByClass(clazz);
+            result = invalidate(tableName, deleteBatchHardByArray(connection, SqlUtil.generateDeleteByArraySql(tableName, idFieldName), objects));
         } catch (Exception e) {
             log.error("batchDelete异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -493,7 +629,7 @@ public class BaseDao {
      */
     public int deleteHard(Connection conn, String tableName, Map<String, Object> conditions) {
         SqlAndParamBean sqlAndParamBean = SqlUtil.generateDeleteSqlAndParam(tableName, conditions);
-        return DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+        return invalidate(tableName, DatabaseUtil.executeSql(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams()));
     }
 
     public int deleteHard(String tableName, Map<String, Object> conditions) {
@@ -511,7 +647,7 @@ public class BaseDao {
     }
 
     /**
-     * 批量删除
+     * 批量删除，sql 中每个主键对应一个 ? 占位符
      *
      * @param conn
      * @param sql
@@ -519,7 +655,57 @@ public class BaseDao {
      * @return
      */
     public int deleteBatchHard(Connection conn, String sql, List<String> divisionIds) {
-        return DatabaseUtil.executeBatchDelete(conn, sql, divisionIds);
+        return DatabaseUtil.executeSql(conn, sql, null == divisionIds ? null : divisionIds.toArray());
+    }
+
+    /**
+     * 批量删除，sql 中只有一个 = any(?) 占位符（见 {@link SqlUtil#generateDeleteByArraySql}），所有主键作为一个数组参数绑定<br>
+     * 超过 {@link SqlArray#MAX_ELEMENTS} 的主键分块执行，连接是自动提交时所有块在一个事务里执行，任意一块失败整体回滚
+     *
+     * @param conn
+     * @param sql
+     * @param ids
+     * @return 删除的总行数，失败返回-1
+     */
+    public int deleteBatchHardByArray(Connection conn, String sql, List<?> ids) {
+        List<SqlArray> chunks = SqlArray.chunks(ids);
+        boolean autoCommit = false;
+        try {
+            autoCommit = chunks.size() > 1 && conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            int count = 0;
+            for (SqlArray chunk : chunks) {
+                int deleted = DatabaseUtil.executeSql(conn, sql, new Object[]{chunk});
+                if (deleted < 0) {
+                    throw new SQLException("删除失败: " + sql);
+                }
+                count += deleted;
+            }
+            if (autoCommit) {
+                conn.commit();
+            }
+            return count;
+        } catch (Exception e) {
+            if (autoCommit) {
+                try {
+                    conn.rollback();
+                } catch (SQLException e2) {
+                    log.error("deleteBatchHardByArray事务回滚错误: {}", ExceptionUtil.buildErrorMessage(e2));
+                }
+            }
+            log.error("deleteBatchHardByArray异常: {}", ExceptionUtil.buildErrorMessage(e));
+            return -1;
+        } finally {
+            if (autoCommit) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    log.error("deleteBatchHardByArray异常: {}", ExceptionUtil.buildErrorMessage(e));
+                }
+            }
+        }
     }
 
     /**
@@ -553,7 +739,7 @@ public class BaseDao {
      */
     public List<Map> search(String tableName, Map<String, Object> condition) {
         List<Map> result = null;
-        Connection conn = getConnection();
+        Connection conn = getReadConnection();
         try {
             result = (List<Map>) search(conn, tableName, condition);
         } catch (Exception e) {
@@ -565,11 +751,30 @@ public class BaseDao {
     }
 
     public <T> List<T> search(String tableName, Map<String, Object> condition, Class<T> clazz) {
-        List list = search(tableName, condition);
-        if (CollectionUtil.isNotEmpty(list)) {
-            return JSON.parseArray(JSON.toJSONString(list), clazz);
+        return search(tableName, null, condition, clazz);
+    }
+
+    /**
+     * 只查询指定字段，映射为 clazz（实体、DTO类或者只有getter的接口），没有查询的属性为null
+     *
+     * @param tableName 表名
+     * @param fields    需要查询的字段，为空时查询全部字段
+     * @param condition 查询条件
+     * @param clazz     结果类型
+     * @return 结果集合，没有数据或者查询失败时返回null
+     */
+    public <T> List<T> search(String tableName, Collection<String> fields, Map<String, Object> condition, Class<T> clazz) {
+        List<T> result = null;
+        Connection conn = getReadConnection();
+        try {
+            SqlAndParamBean sqlAndParamBean = SqlUtil.generateSearchSqlAndParam(fields, tableName, condition, null);
+            result = DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), clazz);
+        } catch (Exception e) {
+            log.error("search异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(conn);
         }
-        return null;
+        return emptyToNull(result);
     }
 
     /**
@@ -584,11 +789,58 @@ public class BaseDao {
      * @return
      */
     public <T> PageResult<T> searchPageBySql(String sql, Object[] params, Class<T> clazz, Integer pageSize, Integer pageNumber) {
-        return new PageResult(pageSize, getTotalRecord(sql, params), searchBySql(sql, params, clazz, pageSize, pageNumber));
+        return searchPageBySql(sql, params, clazz, pageSize, pageNumber, CountMode.EXACT);
     }
 
     public <T> PageResult<T> searchPageBySql(SqlAndParamBean sqlAndParamBean, Class<T> clazz, Integer pageSize, Integer pageNumber) {
-        return new PageResult(pageSize, getTotalRecord(sqlAndParamBean), searchBySql(sqlAndParamBean, clazz, pageSize, pageNumber));
+        return searchPageBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), clazz, pageSize, pageNumber, CountMode.EXACT);
+    }
+
+    /**
+     * 根据sql、参数、第几页，每页大小，按指定的计数方式查询 PageResult
+     *
+     * @param sql
+     * @param params
+     * @param clazz
+     * @param pageSize
+     * @param pageNumber
+     * @param countMode  NONE 不查总数，ESTIMATED 估算总数，EXACT 精确计数
+     * @param <T>
+     * @return pageSize、pageNumber 为空或者不大于0时与 searchBySql 一致不分页，全部数据作为第一页返回
+     */
+    public <T> PageResult<T> searchPageBySql(String sql, Object[] params, Class<T> clazz, Integer pageSize, Integer pageNumber, CountMode countMode) {
+        if (null == pageSize || null == pageNumber || pageSize <= 0 || pageNumber <= 0) {
+            List<T> data = searchBySql(sql, params, clazz);
+            int size = null == data ? 0 : data.size();
+            return toPageResult(data, Math.max(size, 1), Page.PAGE_NUMBER, CountMode.EXACT, size, false);
+        }
+        if (countMode == CountMode.EXACT) {
+            return concurrentPage(new SqlAndParamBean(sql, params, null), withPaging(sql, params, pageSize, pageNumber), clazz, pageSize, pageNumber, false);
+        }
+        int totalRecord = countMode == CountMode.ESTIMATED ? getEstimatedRecord(sql, params) : 0;
+        SqlAndParamBean sqlAndParamBean = withOffsetLimit(sql, params, (pageNumber - 1) * pageSize, pageSize + 1);
+        List<T> data = searchBySql(sqlAndParamBean, clazz);
+        return toPageResult(data, pageSize, pageNumber, countMode, totalRecord, true);
+    }
+
+    /**
+     * 键集分页查询，按排序字段从上一页最后一行之后继续读取，页数再深也只扫描一页的数据，不查询总记录数
+     *
+     * @param sql      查询语句，不能带 order by 和 limit
+     * @param params   参数
+     * @param clazz    行类型
+     * @param orders   排序字段，必须是查询输出的列名，最后一个字段需要唯一（例如主键）
+     * @param pageSize 每页的记录数
+     * @param token    上一页返回的 {@link PageResult#getNextToken()}，为空时查询第一页
+     * @param <T>
+     * @return PageResult，nextToken 为null时表示没有下一页
+     */
+    public <T> PageResult<T> searchPageBySql(String sql, Object[] params, Class<T> clazz, Order[] orders, int pageSize, String token) {
+        SqlAndParamBean sqlAndParamBean = SqlUtil.generateKeysetSqlAndParam(sql, params, orders, KeysetToken.decode(token), pageSize);
+        List<T> data = searchBySql(sqlAndParamBean, clazz);
+        PageResult<T> result = toPageResult(data, pageSize, Page.PAGE_NUMBER, CountMode.NONE, 0, true);
+        result.setNextToken(nextToken(result, orders));
+        return result;
     }
 
     /**
@@ -619,33 +871,24 @@ public class BaseDao {
      */
     public <T> List<T> searchBySql(String sql, Object[] params, Class<T> clazz, Integer pageSize, Integer pageNumber) {
         List<T> list = null;
+        Connection conn = null;
         try {
-            list = mapToList(searchBySql(sql, params, pageSize, pageNumber), clazz);
+            SqlAndParamBean sqlAndParamBean = withPaging(sql, params, pageSize, pageNumber);
+            conn = getReadConnection();
+            list = DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), clazz);
         } catch (Exception e) {
             log.error(ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(conn);
         }
-        return list;
+        return emptyToNull(list);
     }
 
-    private <T> List<T> mapToList(List<Map> dataList, Class<T> clazz) {
-        List<T> list = null;
-        if (CollectionUtil.isNotEmpty(dataList)) {
-            list = new ArrayList<>();
-            for (Map data : dataList) {
-                if (null != data) {
-                    T obj = null;
-                    try {
-                        obj = JSON.parseObject(JSON.toJSONString(data), clazz);
-                    } catch (Exception e) {
-                        log.error("mapToList异常: {}", ExceptionUtil.buildErrorMessage(e));
-                    }
-                    if (null != obj) {
-                        list.add(obj);
-                    }
-                }
-            }
-        }
-        return list;
+    /**
+     * 没有数据时返回null，与原来的返回值保持一致
+     */
+    private <T> List<T> emptyToNull(List<T> list) {
+        return CollectionUtil.isNotEmpty(list) ? list : null;
     }
 
     public <T> List<T> searchBySql(SqlAndParamBean sqlAndParamBean, Class<T> clazz, Integer pageSize, Integer pageNumber) {
@@ -672,12 +915,9 @@ public class BaseDao {
         List<Map> dataList = null;
         Connection conn = null;
         try {
-            if (null != pageSize && null != pageNumber && pageSize > 0 && pageNumber > 0) {
-                sql += " offset ? limit ?";
-                params = concat(params, new Object[]{(pageNumber - 1) * pageSize, pageNumber * pageSize});
-            }
-            conn = getConnection();
-            dataList = DatabaseUtil.executeSearch(conn, sql, params);
+            SqlAndParamBean sqlAndParamBean = withPaging(sql, params, pageSize, pageNumber);
+            conn = getReadConnection();
+            dataList = DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
         } catch (Exception e) {
             log.error("searchBySql异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -690,12 +930,70 @@ public class BaseDao {
         return searchBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), pageSize, pageNumber);
     }
 
+    /**
+     * pageSize、pageNumber都大于0时在sql后面追加分页语句和参数
+     */
+    private SqlAndParamBean withPaging(String sql, Object[] params, Integer pageSize, Integer pageNumber) {
+        if (null != pageSize && null != pageNumber && pageSize > 0 && pageNumber > 0) {
+            return withOffsetLimit(sql, params, (pageNumber - 1) * pageSize, pageSize);
+        }
+        return new SqlAndParamBean(sql, params, null);
+    }
+
+    private SqlAndParamBean withOffsetLimit(String sql, Object[] params, int offset, int limit) {
+        Object[] paging = new Object[]{offset, limit};
+        return new SqlAndParamBean(sql + " offset ? limit ?", null == params ? paging : concat(params, paging), null);
+    }
+
     public <T> T[] concat(T[] first, T[] second) {
         T[] result = Arrays.copyOf(first, first.length + second.length);
         System.arraycopy(second, 0, result, first.length, second.length);
         return result;
     }
 
+    /**
+     * 根据sql流式查询，使用游标每次拉取fetchSize行，Stream关闭时释放连接，必须在 try-with-resources 中使用
+     *
+     * @param sql
+     * @param params
+     * @param clazz     实体类型，传入 Map.class 时每行返回列名 -> 值
+     * @param fetchSize 每次从数据库拉取的行数
+     * @param <T>
+     * @return
+     * @throws SQLException
+     */
+    public <T> Stream<T> streamBySql(String sql, Object[] params, Class<T> clazz, int fetchSize) throws SQLException {
+        Connection conn = getReadConnection();
+        if (null == conn) {
+            throw new SQLException("获取数据库连接失败");
+        }
+        return CursorIterator.open(conn, true, sql, params, clazz, fetchSize).stream();
+    }
+
+    /**
+     * 根据sql使用游标逐行查询，每读取一行回调一次，内存占用与结果集大小无关
+     *
+     * @param sql
+     * @param params
+     * @param clazz     实体类型，传入 Map.class 时每行返回列名 -> 值
+     * @param fetchSize 每次从数据库拉取的行数
+     * @param consumer  行回调
+     * @param <T>
+     * @return 读取的行数
+     * @throws SQLException
+     */
+    public <T> int searchBySql(String sql, Object[] params, Class<T> clazz, int fetchSize, Consumer<? super T> consumer) throws SQLException {
+        int count = 0;
+        try (Stream<T> stream = streamBySql(sql, params, clazz, fetchSize)) {
+            Iterator<T> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * 根据sql查询list集合
      *
@@ -712,7 +1010,7 @@ public class BaseDao {
         List list = null;
         Connection conn = null;
         try {
-            conn = getConnection();
+            conn = getReadConnection();
             conn.setAutoCommit(Boolean.TRUE);
             list = DatabaseUtil.executeSearch(conn, sql, null);
         } catch (Exception e) {
@@ -731,6 +1029,31 @@ public class BaseDao {
         return searchBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
     }
 
+    /**
+     * 按列查询，数值列为基础类型数组，字符串列字典编码，适合行数多的统计查询，见 {@link ColumnarResult}
+     *
+     * @param sql
+     * @param params
+     * @param fetchSize 每次从数据库拉取的行数，小于等于0时使用默认值
+     * @return 查询失败时返回null
+     */
+    public ColumnarResult searchColumnarBySql(String sql, Object[] params, int fetchSize) {
+        Connection conn = getReadConnection();
+        try {
+            return DatabaseUtil.executeColumnarSearch(conn, sql, params, fetchSize);
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+    }
+
+    public ColumnarResult searchColumnarBySql(String sql, Object[] params) {
+        return searchColumnarBySql(sql, params, 0);
+    }
+
+    public ColumnarResult searchColumnarBySql(SqlAndParamBean sqlAndParamBean) {
+        return searchColumnarBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), 0);
+    }
+
     /**
      * 带参数的增删改sql查询方法
      *
@@ -762,6 +1085,18 @@ public class BaseDao {
      * @throws Exception
      */
     public <T> T getObject(T object) {
+        ResultCache cache = ResultCache.forTable(SqlUtil.getTableNameByClass(object.getClass()));
+        if (null != cache) {
+            try {
+                Map<String, Object> condition = SqlUtil.getAllFields(object, false);
+                return cache.get(ResultCache.key("getObject", object.getClass(), condition), () -> {
+                    List<T> list = getObjectAll(object);
+                    return null != list && !list.isEmpty() ? list.get(0) : null;
+                });
+            } catch (IllegalAccessException e) {
+                log.error("getObject异常: {}", ExceptionUtil.buildErrorMessage(e));
+            }
+        }
         List<T> list = getObjectAll(object);
         if (null != list && !list.isEmpty()) {
             return list.get(0);
@@ -783,11 +1118,10 @@ public class BaseDao {
         List<T> list = null;
         Connection conn = null;
         try {
-            conn = getConnection();
+            conn = getReadConnection();
             Map<String, Object> condition = SqlUtil.getAllFields(object, false);
             SqlAndParamBean sqlAndParamBean = SqlUtil.generateSearchSqlAndParam(SqlUtil.getTableNameByClass(clazz), condition, sortConditions);
-            List<Map> dataList = DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
-            list = mapToList(dataList, clazz);
+            list = emptyToNull(DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), clazz));
         } catch (Exception e) {
             log.error("getObjectAll异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -807,6 +1141,31 @@ public class BaseDao {
         return getObjectAll(object, null);
     }
 
+    /**
+     * 按实体对象的属性查询，只查询投影类型需要的字段，见 {@link SqlUtil#projectionFields(Class)}
+     *
+     * @param object         实体对象，不为null的属性作为查询条件
+     * @param projection     结果类型，DTO类或者只有getter的接口
+     * @param sortConditions 排序语句
+     * @return 结果集合，没有数据或者查询失败时返回null
+     */
+    public <R> List<R> getObjectAll(Object object, Class<R> projection, String sortConditions) {
+        List<R> list = null;
+        Connection conn = null;
+        try {
+            conn = getReadConnection();
+            Map<String, Object> condition = SqlUtil.getAllFields(object, false);
+            SqlAndParamBean sqlAndParamBean = SqlUtil.generateSearchSqlAndParam(SqlUtil.projectionFields(projection),
+                    SqlUtil.getTableNameByClass(object.getClass()), condition, sortConditions);
+            list = emptyToNull(DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), projection));
+        } catch (Exception e) {
+            log.error("getObjectAll异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        return list;
+    }
+
     /**
      * 根据查询条件获取分页集合
      *
@@ -817,12 +1176,126 @@ public class BaseDao {
      */
     public <T> PageResult<T> getObjectPage(Query query, Class<T> clazz) {
         setTableName(query, clazz);
-        int totalRecord = getTotalRecord(SqlUtil.generateQueryTotalRecordBySqlAndParamBean(query));
-        if (totalRecord <= 0) {
+        Page page = query.getPage();
+        CountMode countMode = null == page.getCountMode() ? CountMode.EXACT : page.getCountMode();
+        // 不精确计数或者键集分页时多取一行判断是否还有下一页
+        boolean extraRow = page.isKeyset() || countMode != CountMode.EXACT;
+        if (!page.isKeyset()) {
+            Page<T> offsetPage = new Page<>(page.getPageNumber(), page.getPageSize());
+            offsetPage.setCountMode(countMode);
+            if (extraRow) {
+                offsetPage.setEndItems(page.getPageSize() + 1);
+            }
+            query.setPage(offsetPage);
+        }
+        SqlAndParamBean dataBean = SqlUtil.generateQueryBySqlAndParamBean(query);
+        SqlAndParamBean countBean = SqlUtil.generateQueryTotalRecordBySqlAndParamBean(query);
+
+        PageResult<T> result;
+        if (countMode == CountMode.EXACT) {
+            result = concurrentPage(countBean, dataBean, clazz, page.getPageSize(), page.getPageNumber(), extraRow);
+            if (null == result || result.getTotalRecord() <= 0) {
+                return null;
+            }
+        } else {
+            int totalRecord = countMode == CountMode.ESTIMATED ? getEstimatedRecord(countBean) : 0;
+            List<T> data = getList(dataBean, clazz);
+            if (null == data && !page.isKeyset()) {
+                return null;
+            }
+            result = toPageResult(data, page.getPageSize(), page.getPageNumber(), countMode, totalRecord, extraRow);
+        }
+        if (page.isKeyset()) {
+            result.setNextToken(nextToken(result, query.getOrders()));
+        }
+        return result;
+    }
+
+    /**
+     * 精确计数时在 DAO 线程池上同时执行计数和数据查询，耗时取两者中较慢的一个，任意一个失败时取消另一个<br>
+     * 当前线程在 {@link DaoTransaction} 或者 {@link DatasourceUtil#usePrimary()} 范围内时，线程池里拿不到事务连接、
+     * 也不知道要走主库，此时在当前线程上依次执行，读到事务里未提交的数据，也不额外占用连接
+     *
+     * @param countBean  计数的原始查询，按 {@link #getTotalRecord(String, Object[])} 的规则改写为 count 语句
+     * @param dataBean   数据查询
+     * @return PageResult，查询失败时返回null
+     */
+    private <T> PageResult<T> concurrentPage(SqlAndParamBean countBean, SqlAndParamBean dataBean, Class<T> clazz, int pageSize, int pageNumber, boolean extraRow) {
+        SqlAndParamBean count = toCountSqlAndParam(countBean.getSql(), countBean.getParams());
+        if (DaoTransaction.isActive() || DatasourceUtil.isPrimaryForced()) {
+            return sequentialPage(count, dataBean, clazz, pageSize, pageNumber, extraRow);
+        }
+        ConcurrentQuery<Integer> countQuery = ConcurrentQuery.forInt(count.getSql(), count.getParams());
+        ConcurrentQuery<List<T>> dataQuery = ConcurrentQuery.forList(dataBean.getSql(), dataBean.getParams(), clazz);
+        try {
+            ConcurrentQuery.invokeAll(countQuery, dataQuery);
+        } catch (SQLException e) {
+            log.error("concurrentPage异常: {}", ExceptionUtil.buildErrorMessage(e));
             return null;
         }
-        query.setPage(new Page<>(query.getPage().getPageNumber(), query.getPage().getPageSize()));
-        return new PageResult(query.getPage().getPageSize(), totalRecord, getList(SqlUtil.generateQueryBySqlAndParamBean(query), clazz), query.getPage().getPageNumber());
+        return toPageResult(emptyToNull(dataQuery.getResult()), pageSize, pageNumber, CountMode.EXACT, countQuery.getResult(), extraRow);
+    }
+
+    /**
+     * 在当前线程的同一个连接上依次执行计数和数据查询
+     */
+    private <T> PageResult<T> sequentialPage(SqlAndParamBean count, SqlAndParamBean dataBean, Class<T> clazz, int pageSize, int pageNumber, boolean extraRow) {
+        Connection conn = getReadConnection();
+        try {
+            int totalRecord = DatabaseUtil.executeQueryByIntSql(conn, count.getSql(), count.getParams());
+            if (totalRecord < 0) {
+                return null;
+            }
+            List<T> data = DatabaseUtil.executeSearch(conn, dataBean.getSql(), dataBean.getParams(), clazz);
+            if (null == data) {
+                return null;
+            }
+            return toPageResult(emptyToNull(data), pageSize, pageNumber, CountMode.EXACT, totalRecord, extraRow);
+        } catch (Exception e) {
+            log.error("sequentialPage异常: {}", ExceptionUtil.buildErrorMessage(e));
+            return null;
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+    }
+
+    /**
+     * 组装分页结果
+     *
+     * @param data       查询到的数据
+     * @param extraRow   查询时是否多取了一行，多取时用多出的一行判断是否还有下一页，否则按总页数判断
+     */
+    private <T> PageResult<T> toPageResult(List<T> data, int pageSize, int pageNumber, CountMode countMode, int totalRecord, boolean extraRow) {
+        boolean more = null != data && data.size() > pageSize;
+        List<T> pageData = more ? new ArrayList<>(data.subList(0, pageSize)) : data;
+        PageResult<T> result;
+        if (countMode == CountMode.NONE) {
+            result = new PageResult<>();
+            result.setPageSize(pageSize);
+            result.setPageNumber(pageNumber);
+            result.setData(pageData);
+        } else {
+            result = new PageResult<>(pageSize, totalRecord, pageData, pageNumber);
+        }
+        result.setCountMode(countMode);
+        result.setHasNext(extraRow ? more : pageNumber < result.getTotalPage());
+        return result;
+    }
+
+    /**
+     * 键集分页的续页标记：有下一页时用本页最后一行的排序字段值生成
+     */
+    private <T> String nextToken(PageResult<T> result, Order[] orders) {
+        if (!result.isHasNext()) {
+            return null;
+        }
+        List<T> data = result.getData();
+        Object[] keys = KeysetToken.keysOf(data.get(data.size() - 1), orders);
+        if (keys == null) {
+            log.warn("键集分页的排序字段值为null，无法生成续页标记");
+            return null;
+        }
+        return KeysetToken.encode(keys);
     }
 
     /**
@@ -838,6 +1311,25 @@ public class BaseDao {
         return new PageResult(pageSize, getTotalRecord(sqlAndParamBean), getList(sqlAndParamBean, clazz));
     }
 
+    /**
+     * 根据查询条件获取分页集合，sql 自己带分页条件，NONE 时不查询总数，ESTIMATED 时估算总数<br>
+     * NONE、ESTIMATED 时 sql 需要多取一行（limit pageSize + 1），用多出的一行判断是否还有下一页，返回的数据截断为 pageSize 行
+     *
+     * @param pageSize
+     * @param sqlAndParamBean
+     * @param clazz
+     * @param countMode
+     * @param <T>
+     * @return
+     */
+    public <T> PageResult<T> getPage(Integer pageSize, SqlAndParamBean sqlAndParamBean, Class<T> clazz, CountMode countMode) {
+        if (countMode == CountMode.EXACT) {
+            return getPage(pageSize, sqlAndParamBean, clazz);
+        }
+        int totalRecord = countMode == CountMode.ESTIMATED ? getEstimatedRecord(sqlAndParamBean) : 0;
+        return toPageResult(getList(sqlAndParamBean, clazz), pageSize, Page.PAGE_NUMBER, countMode, totalRecord, true);
+    }
+
     /**
      * 根据查询条件获取List集合
      *
@@ -867,15 +1359,9 @@ public class BaseDao {
      */
     private <T> List<T> getList(SqlAndParamBean sqlAndParamBean, Class<T> clazz) {
         List<T> list = null;
-        Connection conn = getConnection();
+        Connection conn = getReadConnection();
         try {
-            List<Map> dataList = DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
-
-            if (CollectionUtil.isEmpty(dataList)) {
-                return null;
-            }
-
-            list = mapToList(dataList, clazz);
+            list = emptyToNull(DatabaseUtil.executeSearch(conn, sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), clazz));
         } catch (Exception e) {
             log.error("getList异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
@@ -905,13 +1391,10 @@ public class BaseDao {
      */
     public int getTotalRecord(String sql, Object[] params) {
         int totalRecord = 0;
-        Connection conn = getConnection();
+        Connection conn = getReadConnection();
         try {
-            if (null != params && params.length > 0) {
-                params = getCountParams(sql, params);
-            }
-            sql = getCountSql(sql);
-            totalRecord = DatabaseUtil.executeQueryByIntSql(conn, sql, params);
+            SqlAndParamBean count = toCountSqlAndParam(sql, params);
+            totalRecord = DatabaseUtil.executeQueryByIntSql(conn, count.getSql(), count.getParams());
         } catch (Exception e) {
             log.error("getTotalRecord异常: {}", ExceptionUtil.buildErrorMessage(e));
             throw e;
@@ -921,6 +1404,46 @@ public class BaseDao {
         return totalRecord;
     }
 
+    /**
+     * 根据数据库统计信息估算总记录数，不扫描数据：单表无条件时读取 pg_class.reltuples，
+     * 否则读取执行计划估算的行数，估算不出来时退回精确计数
+     *
+     * @param sqlAndParamBean
+     * @return 估算的总记录数
+     */
+    public int getEstimatedRecord(SqlAndParamBean sqlAndParamBean) {
+        return getEstimatedRecord(sqlAndParamBean.getSql(), sqlAndParamBean.getParams());
+    }
+
+    public int getEstimatedRecord(String sql, Object[] params) {
+        long estimated = -1;
+        Object[] countParams = null != params && params.length > 0 ? getCountParams(sql, params) : params;
+        String fromClause = getFromClause(sql);
+        Connection conn = getReadConnection();
+        try {
+            Matcher matcher = SINGLE_TABLE_PATTERN.matcher(fromClause);
+            if (matcher.matches()) {
+                estimated = DatabaseUtil.executeQueryByIntSql(conn, RELTUPLES_SQL, new Object[]{matcher.group(1)});
+            }
+            if (estimated < 0) {
+                List<Map> plan = DatabaseUtil.executeSearch(conn, "explain (format json) select 1 " + fromClause, countParams);
+                if (CollectionUtil.isNotEmpty(plan)) {
+                    Object json = plan.get(0).values().iterator().next();
+                    estimated = JSON.parseArray(String.valueOf(json)).getJSONObject(0).getJSONObject("Plan").getLongValue("Plan Rows");
+                }
+            }
+        } catch (Exception e) {
+            log.error("getEstimatedRecord异常: {}", ExceptionUtil.buildErrorMessage(e));
+            estimated = -1;
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        if (estimated < 0) {
+            return getTotalRecord(sql, params);
+        }
+        return (int) Math.min(estimated, Integer.MAX_VALUE);
+    }
+
     public static void main(String[] args) {
 
         String sql = "select * from tbl_user where id = ? and username = ? offset ? limit ? order ? asc ? desc";
@@ -936,6 +1459,16 @@ public class BaseDao {
     }
 
 
+    /**
+     * 把查询语句改写为 count 语句，并去掉排序、分页部分的参数
+     */
+    private SqlAndParamBean toCountSqlAndParam(String sql, Object[] params) {
+        if (null != params && params.length > 0) {
+            params = getCountParams(sql, params);
+        }
+        return new SqlAndParamBean(getCountSql(sql), params, null);
+    }
+
     private Object[] getCountParams(String sql, Object[] params) {
         return Arrays.copyOf(params, params.length - getOrderByParamsCount(sql));
     }
@@ -970,6 +1503,13 @@ public class BaseDao {
     }
 
     private String getCountSql(String sql) {
+        return new StringBuilder("select count(1) ").append(getFromClause(sql)).toString();
+    }
+
+    /**
+     * 截取 from 开始、去掉排序和分页之后的部分
+     */
+    private String getFromClause(String sql) {
         int fromIndex = sql.indexOf("from");
 
         int orderIndex = 0;
@@ -990,7 +1530,7 @@ public class BaseDao {
         if (offsetIndex > 0) {
             sql = sql.substring(0, offsetIndex);
         }
-        return new StringBuilder("select count(1) ").append(sql).toString();
+        return sql;
     }
 
 
@@ -1019,6 +1559,20 @@ public class BaseDao {
         }
     }
 
+    /**
+     * 写入后清空表的查询结果缓存，写入失败时缓存不受影响
+     *
+     * @param tableName 表名
+     * @param result    写入结果
+     * @return result
+     */
+    private int invalidate(String tableName, int result) {
+        if (result > 0) {
+            ResultCache.invalidate(tableName);
+        }
+        return result;
+    }
+
     /**
      * 获取数据连接
      *
@@ -1028,7 +1582,22 @@ public class BaseDao {
     public Connection getConnection() {
         Connection connection = null;
         try {
-            connection = DatasourceUtil.getInstance().getDataSource().getConnection();
+            connection = DatasourceUtil.getInstance().getConn();
+        } catch (SQLException e) {
+            log.error(ExceptionUtil.buildErrorMessage(e));
+        }
+        return connection;
+    }
+
+    /**
+     * 获取只读连接，配置了只读副本时从副本获取，在 {@link DatasourceUtil#usePrimary()} 范围内仍然走主库
+     *
+     * @return
+     */
+    public Connection getReadConnection() {
+        Connection connection = null;
+        try {
+            connection = DatasourceUtil.getInstance().getReadConn();
         } catch (SQLException e) {
             log.error(ExceptionUtil.buildErrorMessage(e));
         }
@@ -1039,58 +1608,7 @@ public class BaseDao {
         if (CollectionUtil.isEmpty(objects))
             return null;
 
-        int saveResult = -1;
-        int updateResult = -1;
-
-        AtomicReference<Boolean> saveFlag = new AtomicReference<>(false);
-        AtomicReference<Boolean> updateFlag = new AtomicReference<>(false);
-
-        List<T> saveObjects = new ArrayList<>();
-        List<T> updateObjects = new ArrayList<>();
-
-        objects.forEach(object -> {
-
-            if (Objects.isNull(object))
-                return;
-
-            if (object.getId() == null || "".equals(object.getId().trim())) {
-                object.setId(IDUtil.generateUUID());
-                object.setCreateTime(DateUtil.now());
-                saveFlag.set(true);
-                saveObjects.add(object);
-            } else {
-                object.setCreater(null);
-                object.setCreateTime(null);
-                object.setUpdateTime(DateUtil.now());
-                updateObjects.add(object);
-                updateFlag.set(true);
-            }
-        });
-
-        if (saveFlag.get()) {
-            saveResult = BaseDao.batchSave(conn, saveObjects);
-        }
-        if (updateFlag.get()) {
-            updateResult = BaseDao.batchUpdate(conn, updateObjects);
-        }
-
-        /**新增、修改成功**/
-        if (saveResult > 0 && updateResult > 0) {
-            saveObjects.addAll(updateObjects);
-            return saveObjects;
-        }
-
-        /**新增成功**/
-        if (saveResult > 0 && updateResult <= 0) {
-            return saveObjects;
-        }
-
-        /**修改成功**/
-        if (saveResult <= 0 && updateResult > 0) {
-            return updateObjects;
-        }
-
-        return null;
+        return upsert(conn, objects);
     }
 
 }
@@ -1,9 +1,9 @@
 package com.xxw.base.dao;
 
+import com.xxw.base.util.DatabaseUtil;
 import com.xxw.base.util.DatasourceUtil;
 import com.xxw.base.util.ExceptionUtil;
 import com.xxw.base.util.SqlUtil;
-import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.CollectionUtils;
 
@@ -12,20 +12,45 @@ import java.lang.reflect.Type;
 import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 
 @Slf4j
 public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
 
+    /**
+     * 开启 COPY 导入时建议的阈值，子类在 {@link #getCopyThreshold()} 里返回
+     */
+    public static final int SUGGESTED_COPY_THRESHOLD = 10000;
+
+    /**
+     * 查询结果默认缓存时间（毫秒）
+     */
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 60_000L;
+
+    private volatile ResultCache resultCache;
+
+    private volatile AsyncBaseDao<T> async;
+
+    private volatile WriteBehindInserter writeBehindInserter;
+
     @Override
     public int insertBatch(Connection connection, List<T> domains) throws Exception {
         if (CollectionUtils.isEmpty(domains)) {
             return -1;
         }
-        int batch = BaseDao.insertBatch(connection, getTableName(), domains);
+        if (useCopy(domains)) {
+            return insertBatchByCopy(connection, domains);
+        }
+        int batch = BaseDao.insertBatch(connection, getTableName(), domains, getBatchChunkSize());
         if (!Objects.equals(domains.size(), batch)) {
             return -1;
         }
@@ -37,7 +62,8 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
         if(Objects.isNull(domain)) {
             return -1;
         }
-        int insert = BaseDao.saveObject(domain, getTableName());
+        WriteBehindInserter inserter = writeBehindInserter();
+        int insert = null == inserter ? BaseDao.saveObject(domain, getTableName()) : inserter.submit(domain).join();
         if (!Objects.equals(BigInteger.ONE.intValue(), insert)) {
             return -1;
         }
@@ -49,13 +75,45 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
         if (CollectionUtils.isEmpty(domains)) {
             return -1;
         }
-        int insert = BaseDao.insertBatch(domains, getTableName());
+        if (useCopy(domains)) {
+            return insertBatchByCopy(domains);
+        }
+        int insert = BaseDao.insertBatch(domains, getTableName(), getBatchChunkSize());
         if (!Objects.equals(domains.size(), insert)) {
             return -1;
         }
         return BigInteger.ZERO.intValue();
     }
 
+    @Override
+    public int insertBatchByCopy(Connection connection, List<T> domains) throws Exception {
+        if (CollectionUtils.isEmpty(domains)) {
+            return -1;
+        }
+        int copy = BaseDao.copyBatch(connection, getTableName(), domains);
+        if (!Objects.equals(domains.size(), copy)) {
+            return -1;
+        }
+        return BigInteger.ZERO.intValue();
+    }
+
+    @Override
+    public int insertBatchByCopy(List<T> domains) throws Exception {
+        if (CollectionUtils.isEmpty(domains)) {
+            return -1;
+        }
+        int copy = BaseDao.copyBatch(domains, getTableName());
+        if (!Objects.equals(domains.size(), copy)) {
+            return -1;
+        }
+        return BigInteger.ZERO.intValue();
+    }
+
+    private boolean useCopy(List<T> domains) {
+        int threshold = getCopyThreshold();
+        return threshold > 0 && domains.size() >= threshold;
+    }
+
     @Override
     public int deleteByConditions(Connection connection, Map<String, Object> conditions) throws Exception {
         int id = BaseDao.deleteHard(connection, getTableName(), conditions);
@@ -76,12 +134,22 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
 
     @Override
     public List<T> searchByConditionsWithoutConnection(Map<String, Object> conditions) throws Exception {
-        return JSON.parseArray(JSON.toJSONString(BaseDao.search(getTableName(), conditions)), getActualTypeArgument(this.getClass()));
+        return search(conditions);
+    }
+
+    @Override
+    public List<T> searchByConditionsWithoutConnection(Map<String, Object> conditions, Collection<String> fields) throws Exception {
+        return search(null == fields ? null : new ArrayList<>(fields), conditions, getActualTypeArgument(this.getClass()));
+    }
+
+    @Override
+    public <R> List<R> searchByConditionsWithoutConnection(Map<String, Object> conditions, Class<R> projection) throws Exception {
+        return search(SqlUtil.projectionFields(projection), conditions, projection);
     }
 
     @Override
     public T searchOneByConditionsWithoutConnection(Map<String, Object> conditions) throws Exception {
-        List<T> list = JSON.parseArray(JSON.toJSONString(BaseDao.search(getTableName(), conditions)), getActualTypeArgument(this.getClass()));
+        List<T> list = search(conditions);
         if (list != null && list.size() != 0) {
             return list.get(0);
         }
@@ -89,24 +157,97 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
     }
 
 
+    @Override
+    public Stream<T> streamByConditions(Map<String, Object> conditions, int fetchSize) throws Exception {
+        SqlAndParamBean sqlAndParamBean = SqlUtil.generateSearchSqlAndParam(getTableName(), conditions);
+        return BaseDao.streamBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), getActualTypeArgument(this.getClass()), fetchSize);
+    }
+
+    @Override
+    public int searchByConditions(Map<String, Object> conditions, int fetchSize, Consumer<? super T> consumer) throws Exception {
+        SqlAndParamBean sqlAndParamBean = SqlUtil.generateSearchSqlAndParam(getTableName(), conditions);
+        return BaseDao.searchBySql(sqlAndParamBean.getSql(), sqlAndParamBean.getParams(), getActualTypeArgument(this.getClass()), fetchSize, consumer);
+    }
+
+
     @Override
     public List<T> batchSearchByFieldWithoutConnection(String field, List<?> fieldValues) throws Exception {
-        StringBuilder fieldValuesArr = new StringBuilder();
-        fieldValues.forEach(id -> {
-            fieldValuesArr.append("?");
-            fieldValuesArr.append(" ");
-            fieldValuesArr.append(",");
-        });
-        fieldValuesArr.deleteCharAt(fieldValuesArr.length() - 1);
-        StringBuffer preSql = new StringBuffer();
-        preSql.append("SELECT * FROM ")
-                .append(getTableName())
-                .append("  WHERE ")
-                .append(field.toLowerCase())
-                .append(" IN (")
-                .append(fieldValuesArr)
-                .append(")");
-        return BaseDao.searchBySql(preSql.toString(), fieldValues.toArray(), getActualTypeArgument(this.getClass()));
+        return batchSearchByField(null, field, fieldValues, getActualTypeArgument(this.getClass()));
+    }
+
+    @Override
+    public <R> List<R> batchSearchByFieldWithoutConnection(String field, List<?> fieldValues, Class<R> projection) throws Exception {
+        return batchSearchByField(SqlUtil.projectionFields(projection), field, fieldValues, projection);
+    }
+
+    private <R> List<R> batchSearchByField(List<String> fields, String field, List<?> fieldValues, Class<R> clazz) {
+        String sql = "SELECT " + SqlUtil.selectList(fields) + " FROM " + getTableName() + "  WHERE " + field.toLowerCase() + " = any(?)";
+        List<R> result = new ArrayList<>();
+        Connection conn = BaseDao.getReadConnection();
+        try {
+            // 超大的集合按块拆分，每块一次查询；某一块没有数据时继续查下一块，只有查询失败才返回null
+            for (SqlArray values : SqlArray.chunks(fieldValues)) {
+                List<R> list = DatabaseUtil.executeSearch(conn, sql, new Object[]{values}, clazz);
+                if (null == list) {
+                    return null;
+                }
+                result.addAll(list);
+            }
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * 按条件查询，启用了结果缓存时先查缓存；缓存返回的是集合和实体的副本，调用方修改不影响缓存
+     */
+    private List<T> search(Map<String, Object> conditions) {
+        return search(null, conditions, getActualTypeArgument(this.getClass()));
+    }
+
+    /**
+     * 只查询 fields 并映射为 clazz，缓存的键包含查询字段和结果类型
+     */
+    private <R> List<R> search(List<String> fields, Map<String, Object> conditions, Class<R> clazz) {
+        ResultCache cache = resultCache();
+        if (null == cache) {
+            return BaseDao.search(getTableName(), fields, conditions, clazz);
+        }
+        Object key = ResultCache.key("search", fields, clazz, null == conditions ? null : new HashMap<>(conditions));
+        return cache.get(key, () -> BaseDao.search(getTableName(), fields, conditions, clazz));
+    }
+
+    private ResultCache resultCache() {
+        int size = getCacheSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (null == resultCache) {
+            resultCache = ResultCache.register(getTableName(), size, getCacheTtlMillis());
+        }
+        return resultCache;
+    }
+
+    private WriteBehindInserter writeBehindInserter() {
+        int maxBatch = getWriteBehindBatchSize();
+        if (maxBatch <= 0) {
+            return null;
+        }
+        if (null == writeBehindInserter) {
+            writeBehindInserter = WriteBehindInserter.register(getTableName(), maxBatch, getWriteBehindDelayMillis());
+        }
+        return writeBehindInserter;
+    }
+
+    /**
+     * 写入后清空本表的查询结果缓存（实体类对应的表名可能和 getTableName 不一致）
+     */
+    private int invalidate(int result) {
+        if (result > 0) {
+            ResultCache.invalidate(getTableName());
+        }
+        return result;
     }
 
     /*
@@ -128,12 +269,17 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
 
     @Override
     public int batchDeleteByParam(Connection connection, String field, List<String> params) throws Exception{
-        return BaseDao.deleteBatchHard(connection, SqlUtil.generateBatchDeleteSqlForTableName(getTableName(), field, params), params);
+        return invalidate(BaseDao.deleteBatchHardByArray(connection, SqlUtil.generateDeleteByArraySql(getTableName(), field), params));
     }
 
     @Override
     public int batchDeleteByParam(String field, List<String> params) throws Exception{
-        return BaseDao.deleteBatchHard(getConnection(), SqlUtil.generateBatchDeleteSqlForTableName(getTableName(), field, params), params);
+        Connection connection = getConnection();
+        try {
+            return invalidate(BaseDao.deleteBatchHardByArray(connection, SqlUtil.generateDeleteByArraySql(getTableName(), field), params));
+        } finally {
+            DatasourceUtil.close(connection);
+        }
     }
 
 
@@ -149,18 +295,18 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
 
     @Override
     public int batchUpdate(List<T> domain) throws Exception {
-        return BaseDao.batchUpdate(domain);
+        return invalidate(BaseDao.batchUpdate(domain));
     }
 
     @Override
     public int batchUpdate(Connection connection, List<T> domain) throws Exception {
-        return BaseDao.batchUpdate(connection, domain);
+        return invalidate(BaseDao.batchUpdate(connection, domain));
     }
 
 
     @Override
     public int batchUpdateAllField(Connection connection, List<T> domain) throws Exception {
-        return BaseDao.batchAllUpdate(connection, domain);
+        return invalidate(BaseDao.batchAllUpdate(connection, domain));
     }
 
     @Override
@@ -171,7 +317,7 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
     protected Connection getConnection() {
         Connection connection = null;
         try {
-            connection = DatasourceUtil.getInstance().getDataSource().getConnection();
+            connection = DatasourceUtil.getInstance().getConn();
         } catch (SQLException e) {
             log.error(ExceptionUtil.buildErrorMessage(e));
         }
@@ -179,5 +325,81 @@ public abstract class BaseDaoImpl<T> implements IBaseDao<T> {
     }
 
 
+    /**
+     * insertBatch 改用 COPY 导入的数据量阈值，默认0不使用 COPY；
+     * COPY 以文本格式导入，日期按本地时间格式化而不是绑定 Timestamp，出错时整批失败，
+     * 子类确认表的字段适用后返回大于0的值开启，例如 {@link #SUGGESTED_COPY_THRESHOLD}
+     */
+    protected int getCopyThreshold() {
+        return 0;
+    }
+
+    /**
+     * insertBatch 每条多行插入语句的行数，默认 {@link BatchInsertWriter#DEFAULT_CHUNK_SIZE}
+     */
+    protected int getBatchChunkSize() {
+        return BatchInsertWriter.DEFAULT_CHUNK_SIZE;
+    }
+
+    /**
+     * 按条件查询的结果缓存最多缓存多少个查询，默认0不缓存；
+     * 启用后本表通过 BaseDao、BaseDaoImpl 的增删改会清空缓存，直接执行sql的修改只能等缓存过期
+     */
+    protected int getCacheSize() {
+        return 0;
+    }
+
+    /**
+     * 查询结果缓存时间（毫秒），默认 {@link #DEFAULT_CACHE_TTL_MILLIS}
+     */
+    protected long getCacheTtlMillis() {
+        return DEFAULT_CACHE_TTL_MILLIS;
+    }
+
+    /**
+     * 查询结果缓存，没有启用时返回null，用于查看命中率等指标
+     */
+    public ResultCache getResultCache() {
+        return resultCache();
+    }
+
+    /**
+     * 插入一行，启用了后写缓冲时和其他线程的插入合并成多行插入，不等待写入完成
+     *
+     * @return 插入结果，成功为1，失败为-1
+     */
+    public CompletableFuture<Integer> insertBehind(T domain) {
+        WriteBehindInserter inserter = writeBehindInserter();
+        if (null == inserter) {
+            return CompletableFuture.completedFuture(BaseDao.saveObject(domain, getTableName()));
+        }
+        return inserter.submit(domain);
+    }
+
+    /**
+     * 单行插入的后写缓冲每次最多合并多少行，默认0不启用；
+     * 启用后 insert 等待所在的批次写完再返回，insertBehind 直接返回 future
+     */
+    protected int getWriteBehindBatchSize() {
+        return 0;
+    }
+
+    /**
+     * 后写缓冲里最早的一行最多等待多久（毫秒），默认 {@link WriteBehindInserter#DEFAULT_MAX_DELAY_MILLIS}
+     */
+    protected long getWriteBehindDelayMillis() {
+        return WriteBehindInserter.DEFAULT_MAX_DELAY_MILLIS;
+    }
+
+    /**
+     * 本DAO的异步版本，多个DAO的查询可以并发执行
+     */
+    public AsyncBaseDao<T> async() {
+        if (null == async) {
+            async = AsyncBaseDao.of(this);
+        }
+        return async;
+    }
+
     protected abstract String getTableName();
 }
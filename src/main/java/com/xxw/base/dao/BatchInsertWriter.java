@@ -0,0 +1,324 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.SqlMetrics;
+import com.xxw.base.util.SqlUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * 分块批量插入<br>
+ * 把实体集合按块拆分，每块生成一条 insert into ... values (...),(...),... 多行插入语句，
+ * 每条语句的绑定参数个数不超过 PostgreSQL 协议限制的 32767 个，一块只需要一次网络往返；
+ * {@link #upsert(Connection, String, List, Collection)} 在同样的语句后面加上 on conflict (主键) do update，新增和修改合并为一次写入；
+ * {@link #update(Connection, String, List, List, boolean)} 用 update ... from (values ...) 按主键一次更新一块数据；
+ * 这两种写法里同一个主键出现多次时先按主键去重，以最后一个对象为准
+ *
+ * @author ivan
+ */
+@Slf4j
+public final class BatchInsertWriter {
+
+    /**
+     * PostgreSQL 单条语句最多可以绑定的参数个数
+     */
+    public static final int MAX_BIND_PARAMETERS = 32767;
+
+    /**
+     * 默认每块的行数
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * 最多缓存多少张表的字段类型
+     */
+    private static final int MAX_TABLE_SIZE = 1024;
+
+    private static final String COLUMN_TYPES_SQL = "select attname, format_type(atttypid, null) from pg_attribute"
+            + " where attrelid = to_regclass(?) and attnum > 0 and not attisdropped";
+
+    /**
+     * datatype_mismatch：缓存的字段类型与表结构不一致（例如改了字段类型）
+     */
+    private static final String DATATYPE_MISMATCH = "42804";
+
+    private static final String UNDEFINED_COLUMN = "42703";
+
+    /**
+     * 表名 -> (小写字段名 -> 字段类型)，values 列表里的参数按字段类型显式转换
+     */
+    private static final Map<String, Map<String, String>> COLUMN_TYPES = new ConcurrentHashMap<>();
+
+    private static final BatchInsertWriter DEFAULT = new BatchInsertWriter(DEFAULT_CHUNK_SIZE);
+
+    private final int chunkSize;
+
+    public BatchInsertWriter(int chunkSize) {
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+    }
+
+    public static BatchInsertWriter getDefault() {
+        return DEFAULT;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 计算每条语句实际插入的行数，受块大小和绑定参数上限共同限制
+     *
+     * @param columnCount 每行的字段数
+     * @return 每条语句的行数
+     */
+    public int rowsPerStatement(int columnCount) {
+        if (columnCount <= 0) {
+            return chunkSize;
+        }
+        return Math.max(1, Math.min(chunkSize, MAX_BIND_PARAMETERS / columnCount));
+    }
+
+    /**
+     * 分块插入，插入的字段以第一个对象中值不为null的字段为准，与 insertBatch 保持一致
+     *
+     * @param conn      数据库连接
+     * @param tableName 表名
+     * @param objects   实体对象集合
+     * @return 每一块插入的行数
+     * @throws SQLException 执行异常，已经执行成功的块是否保留由连接的事务决定
+     */
+    public int[] write(Connection conn, String tableName, List<?> objects) throws SQLException {
+        if (objects == null || objects.isEmpty()) {
+            return new int[0];
+        }
+        List<EntityMeta.Column> columns = EntityMeta.of(objects.get(0).getClass()).getNonNullColumns(objects.get(0));
+        return write(conn, tableName, "insert", objects, columns, rows -> SqlUtil.generateMultiRowInsertSql(tableName, columns, rows));
+    }
+
+    /**
+     * 分块插入或更新：主键冲突的行改为更新，值为null的字段保留数据库里原来的值<br>
+     * 插入的字段为所有对象中至少有一个值不为null的字段，全部为null的字段使用数据库默认值
+     *
+     * @param conn              数据库连接
+     * @param tableName         表名
+     * @param objects           实体对象集合，必须有主键字段
+     * @param insertOnlyColumns 只在插入时写入、冲突时不更新的字段，例如创建时间
+     * @return 每一块插入或更新的行数
+     * @throws SQLException 执行异常，已经执行成功的块是否保留由连接的事务决定
+     */
+    public int[] upsert(Connection conn, String tableName, List<?> objects, Collection<String> insertOnlyColumns) throws SQLException {
+        if (objects == null || objects.isEmpty()) {
+            return new int[0];
+        }
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        EntityMeta.Column primaryKey = meta.getPrimaryKey();
+        if (null == primaryKey) {
+            throw new IllegalArgumentException("实体没有主键ID字段....");
+        }
+        // 同一条语句里同一个主键出现两次时 on conflict do update 整条失败，按主键去重，以最后一个对象为准
+        objects = distinctByPrimaryKey(objects, primaryKey);
+        List<EntityMeta.Column> columns = new ArrayList<>();
+        List<EntityMeta.Column> updateColumns = new ArrayList<>();
+        for (EntityMeta.Column column : meta.getColumns()) {
+            if (column.isPrimaryKey() || anyNonNull(column, objects)) {
+                columns.add(column);
+                if (!column.isPrimaryKey() && (null == insertOnlyColumns || !insertOnlyColumns.contains(column.getName()))) {
+                    updateColumns.add(column);
+                }
+            }
+        }
+        return write(conn, tableName, "upsert", objects, columns,
+                rows -> SqlUtil.generateMultiRowUpsertSql(tableName, columns, rows, primaryKey.getName(), updateColumns));
+    }
+
+    /**
+     * 分块按主键更新，每块生成一条语句：<br>
+     * update tbl_user set name = v.name from (values (?::varchar,?::varchar),(...)) as v (id,name) where tbl_user.id = v.id
+     *
+     * @param conn             数据库连接
+     * @param tableName        表名
+     * @param objects          实体对象集合，主键值不能为空
+     * @param columns          要更新的字段，不包括主键
+     * @param keepStoredOnNull 值为null时是否保留数据库里原来的值
+     * @return 每一块更新的行数
+     * @throws SQLException 执行异常，已经执行成功的块是否保留由连接的事务决定
+     */
+    public int[] update(Connection conn, String tableName, List<?> objects, List<EntityMeta.Column> columns, boolean keepStoredOnNull) throws SQLException {
+        if (objects == null || objects.isEmpty() || columns.isEmpty()) {
+            return new int[0];
+        }
+        EntityMeta.Column primaryKey = EntityMeta.of(objects.get(0).getClass()).getPrimaryKey();
+        if (null == primaryKey) {
+            throw new IllegalArgumentException("实体没有主键ID字段....");
+        }
+        for (Object object : objects) {
+            Object primaryKeyValue = primaryKey.getValue(object);
+            if (null == primaryKeyValue || primaryKeyValue.toString().isEmpty()) {
+                throw new IllegalArgumentException("主键ID的值不能为空....");
+            }
+        }
+        // 同一个主键在 values 里出现多次时实际生效的是哪一行不确定
+        objects = distinctByPrimaryKey(objects, primaryKey);
+        List<EntityMeta.Column> valueColumns = new ArrayList<>(columns.size() + 1);
+        valueColumns.add(primaryKey);
+        valueColumns.addAll(columns);
+        List<String> names = new ArrayList<>(valueColumns.size());
+        for (EntityMeta.Column column : valueColumns) {
+            names.add(column.getName().toLowerCase());
+        }
+        Map<String, String> types = columnTypes(conn, tableName, names);
+        String[] castTypes = new String[names.size()];
+        for (int i = 0; i < castTypes.length; i++) {
+            castTypes[i] = types.get(names.get(i));
+        }
+        try {
+            return write(conn, tableName, "update", objects, valueColumns,
+                    rows -> SqlUtil.generateMultiRowUpdateSql(tableName, valueColumns, castTypes, rows, keepStoredOnNull));
+        } catch (SQLException e) {
+            if (DATATYPE_MISMATCH.equals(e.getSQLState())) {
+                // 字段类型改过，下次重新查询
+                COLUMN_TYPES.remove(tableName);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查询表的字段类型，values 列表里的参数类型不能从目标表推断，需要显式转换<br>
+     * 缓存里缺少需要的字段时（表结构新增了字段）重新查询一次，仍然没有时直接报错，
+     * 否则没有类型转换的参数会被当成 text，执行时才报类型不匹配
+     *
+     * @param columns 需要的字段，小写
+     */
+    private static Map<String, String> columnTypes(Connection conn, String tableName, Collection<String> columns) throws SQLException {
+        Map<String, String> types = COLUMN_TYPES.get(tableName);
+        if (null == types || !types.keySet().containsAll(columns)) {
+            types = loadColumnTypes(conn, tableName);
+        }
+        for (String column : columns) {
+            if (!types.containsKey(column)) {
+                throw new SQLException("表 " + tableName + " 没有字段 " + column, UNDEFINED_COLUMN);
+            }
+        }
+        return types;
+    }
+
+    private static Map<String, String> loadColumnTypes(Connection conn, String tableName) throws SQLException {
+        Map<String, String> types = new HashMap<>();
+        try (PreparedStatement state = conn.prepareStatement(COLUMN_TYPES_SQL)) {
+            state.setString(1, tableName);
+            try (ResultSet resultSet = state.executeQuery()) {
+                while (resultSet.next()) {
+                    types.put(resultSet.getString(1).toLowerCase(), resultSet.getString(2));
+                }
+            }
+        }
+        if (COLUMN_TYPES.size() >= MAX_TABLE_SIZE) {
+            COLUMN_TYPES.clear();
+        }
+        COLUMN_TYPES.put(tableName, types);
+        return types;
+    }
+
+    /**
+     * @param kind 语句类型，与表名一起作为 {@link SqlMetrics} 的统计key
+     */
+    private int[] write(Connection conn, String tableName, String kind, List<?> objects, List<EntityMeta.Column> columns,
+                        IntFunction<String> sqlOfRows) throws SQLException {
+        // 每种行数的多行语句文本都不一样，按sql文本统计会占满模板数，统一记在 "表 + 语句类型" 下
+        String metricsKey = metricsKey(tableName, kind);
+        int rows = rowsPerStatement(columns.size());
+        int chunkCount = (objects.size() + rows - 1) / rows;
+        int[] counts = new int[chunkCount];
+
+        String fullSql = null;
+        PreparedStatement fullState = null;
+        try {
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                int from = chunk * rows;
+                int to = Math.min(from + rows, objects.size());
+                List<?> part = objects.subList(from, to);
+                if (part.size() == rows) {
+                    // 完整的块复用同一个 PreparedStatement
+                    if (fullState == null) {
+                        fullSql = sqlOfRows.apply(rows);
+                        fullState = conn.prepareStatement(fullSql);
+                    }
+                    counts[chunk] = execute(fullState, metricsKey, columns, part);
+                } else {
+                    PreparedStatement lastState = null;
+                    try {
+                        String lastSql = sqlOfRows.apply(part.size());
+                        lastState = conn.prepareStatement(lastSql);
+                        counts[chunk] = execute(lastState, metricsKey, columns, part);
+                    } finally {
+                        DatasourceUtil.close(lastState);
+                    }
+                }
+                log.debug("write {} chunk {}/{} rows {}", tableName, chunk + 1, chunkCount, counts[chunk]);
+            }
+        } finally {
+            DatasourceUtil.close(fullState);
+        }
+        return counts;
+    }
+
+    /**
+     * 按主键去重，同一个主键以最后一个对象为准，位置保持第一次出现的位置；主键为空的对象原样保留
+     */
+    static List<?> distinctByPrimaryKey(List<?> objects, EntityMeta.Column primaryKey) {
+        Map<Object, Object> distinct = new LinkedHashMap<>(objects.size() * 2);
+        for (Object object : objects) {
+            Object key = primaryKey.getValue(object);
+            distinct.put(null == key ? new Object() : key, object);
+        }
+        return distinct.size() == objects.size() ? objects : new ArrayList<>(distinct.values());
+    }
+
+    private static boolean anyNonNull(EntityMeta.Column column, List<?> objects) {
+        for (Object object : objects) {
+            if (null != column.getValue(object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 多行语句在 {@link SqlMetrics} 里的统计key，例如 "multi-row insert tbl_user"
+     */
+    private static String metricsKey(String tableName, String kind) {
+        return "multi-row " + kind + " " + tableName;
+    }
+
+    private int execute(PreparedStatement state, String metricsKey, List<EntityMeta.Column> columns, List<?> part) throws SQLException {
+        int index = 1;
+        for (Object object : part) {
+            for (EntityMeta.Column column : columns) {
+                state.setObject(index++, column.getValue(object));
+            }
+        }
+        long start = System.nanoTime();
+        int count = -1;
+        try {
+            SqlMetrics.recordPrepare(metricsKey, state);
+            count = state.executeUpdate();
+            return count;
+        } finally {
+            // 多行语句的参数太多，慢查询日志里不输出参数
+            SqlMetrics.record(metricsKey, null, start, count, count < 0);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.DatabaseUtil;
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.ExceptionUtil;
+import com.xxw.base.util.SqlMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 可以在 {@link DaoExecutor} 上并发执行的单条查询<br>
+ * 每条查询借用自己的连接；通过 {@link #invokeAll(ConcurrentQuery[])} 一起执行时，任意一条失败都会取消其他还在执行的查询
+ * （{@link java.sql.Statement#cancel()} 向数据库发送取消请求），再把异常抛给调用方
+ *
+ * @param <V> 查询结果类型
+ * @author ivan
+ */
+@Slf4j
+public final class ConcurrentQuery<V> implements Callable<V> {
+
+    /**
+     * 结果集处理
+     */
+    public interface ResultSetHandler<V> {
+        V handle(ResultSet resultSet) throws SQLException;
+    }
+
+    private final String sql;
+
+    private final Object[] params;
+
+    private final ResultSetHandler<V> handler;
+
+    /**
+     * 保护 running 和 cancelled：取消请求只能发给本查询还没关闭的语句，
+     * 语句关闭、连接归还之后这个物理连接上可能已经在执行别人的查询
+     */
+    private final Object lock = new Object();
+
+    private PreparedStatement running;
+
+    private volatile boolean cancelled;
+
+    private Future<?> future;
+
+    public ConcurrentQuery(String sql, Object[] params, ResultSetHandler<V> handler) {
+        this.sql = sql;
+        this.params = params;
+        this.handler = handler;
+    }
+
+    /**
+     * 查询单个int值，例如 select count(1)
+     */
+    public static ConcurrentQuery<Integer> forInt(String sql, Object[] params) {
+        return new ConcurrentQuery<>(sql, params, resultSet -> resultSet.next() ? resultSet.getInt(1) : 0);
+    }
+
+    /**
+     * 查询实体集合
+     */
+    public static <T> ConcurrentQuery<List<T>> forList(String sql, Object[] params, Class<T> clazz) {
+        return new ConcurrentQuery<>(sql, params, resultSet -> EntityRowMapper.of(clazz).mapRows(resultSet));
+    }
+
+    @Override
+    public V call() throws SQLException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        Connection conn = BaseDao.getReadConnection();
+        if (null == conn) {
+            throw new SQLException("获取数据库连接失败");
+        }
+        PreparedStatement state = null;
+        ResultSet resultSet = null;
+        long start = System.nanoTime();
+        V result = null;
+        boolean failed = true;
+        try {
+            state = conn.prepareStatement(sql);
+            DatabaseUtil.setParameters(state, params);
+            synchronized (lock) {
+                if (cancelled) {
+                    throw new CancellationException();
+                }
+                running = state;
+            }
+            SqlMetrics.recordPrepare(sql, state);
+            resultSet = state.executeQuery();
+            result = handler.handle(resultSet);
+            failed = false;
+            return result;
+        } finally {
+            SqlMetrics.record(sql, params, start, result instanceof Collection ? ((Collection<?>) result).size() : -1, failed);
+            synchronized (lock) {
+                running = null;
+                DatasourceUtil.close(resultSet);
+                DatasourceUtil.close(state);
+            }
+            DatasourceUtil.close(conn);
+        }
+    }
+
+    /**
+     * 取消查询：还没开始的不再执行，正在执行的向数据库发送取消请求
+     */
+    public void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            if (null != running) {
+                try {
+                    running.cancel();
+                } catch (SQLException e) {
+                    log.warn("取消查询失败: {}", ExceptionUtil.buildErrorMessage(e));
+                }
+            }
+        }
+        if (null != future) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 获取查询结果，必须在 {@link #invokeAll(ConcurrentQuery[])} 成功返回之后调用
+     */
+    @SuppressWarnings("unchecked")
+    public V getResult() {
+        try {
+            return (V) future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("查询尚未成功完成", e);
+        }
+    }
+
+    /**
+     * 并发执行一组查询并等待全部完成，任意一条失败时取消其余查询
+     *
+     * @param queries 查询
+     * @throws SQLException 第一条失败的查询抛出的异常，或者等待时被中断
+     */
+    public static void invokeAll(ConcurrentQuery<?>... queries) throws SQLException {
+        try {
+            if (DaoExecutor.inExecutorThread()) {
+                // 已经在线程池里时顺序执行，避免等待子任务把线程池占满
+                for (ConcurrentQuery<?> query : queries) {
+                    FutureTask<Object> task = new FutureTask<>(query::call);
+                    query.future = task;
+                    task.run();
+                    task.get();
+                }
+                return;
+            }
+            CompletionService<Object> completionService = new ExecutorCompletionService<>(DaoExecutor.get());
+            for (ConcurrentQuery<?> query : queries) {
+                query.future = completionService.submit(query::call);
+            }
+            for (int i = 0; i < queries.length; i++) {
+                completionService.take().get();
+            }
+        } catch (ExecutionException e) {
+            cancelAll(queries);
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("并发查询失败", cause);
+        } catch (InterruptedException e) {
+            cancelAll(queries);
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待并发查询时被中断", e);
+        }
+    }
+
+    private static void cancelAll(ConcurrentQuery<?>... queries) {
+        for (ConcurrentQuery<?> query : queries) {
+            query.cancel();
+        }
+    }
+}
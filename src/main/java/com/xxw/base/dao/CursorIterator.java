@@ -0,0 +1,191 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.CompactRow;
+import com.xxw.base.util.DatabaseUtil;
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.ExceptionUtil;
+import com.xxw.base.util.SqlMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 基于数据库游标的逐行读取迭代器<br>
+ * PostgreSQL 只有在关闭自动提交并设置 fetchSize 时才会使用游标分批拉取数据，否则会一次性把结果全部读到内存。
+ * 读取完毕、出现异常或者调用 {@link #close()} 时关闭结果集，恢复自动提交，并按需释放连接
+ *
+ * @param <T> 行类型，实体类或者 Map
+ * @author ivan
+ */
+@Slf4j
+public final class CursorIterator<T> implements Iterator<T>, AutoCloseable {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final Connection conn;
+
+    private final boolean closeConnection;
+
+    private final boolean autoCommit;
+
+    private final PreparedStatement state;
+
+    private final ResultSet resultSet;
+
+    private final EntityRowMapper<T> rowMapper;
+
+    private final EntityMeta.Column[] plan;
+
+    /**
+     * 按 Map 读取时共用的列信息
+     */
+    private final CompactRow.Header header;
+
+    private boolean fetched;
+
+    private boolean hasNext;
+
+    private boolean closed;
+
+    private CursorIterator(Connection conn, boolean closeConnection, boolean autoCommit, PreparedStatement state,
+                           ResultSet resultSet, EntityRowMapper<T> rowMapper) throws SQLException {
+        this.conn = conn;
+        this.closeConnection = closeConnection;
+        this.autoCommit = autoCommit;
+        this.state = state;
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.plan = rowMapper == null ? null : rowMapper.getPlan(resultSet.getMetaData());
+        this.header = rowMapper == null ? CompactRow.Header.of(resultSet.getMetaData()) : null;
+    }
+
+    /**
+     * 打开游标
+     *
+     * @param conn            数据库连接
+     * @param closeConnection 迭代器关闭时是否同时关闭连接
+     * @param sql             查询语句
+     * @param params          参数
+     * @param clazz           行类型，传入 Map.class 时每行返回列名 -> 值
+     * @param fetchSize       每次从数据库拉取的行数，小于等于0时使用 {@link #DEFAULT_FETCH_SIZE}
+     * @return CursorIterator
+     * @throws SQLException 执行查询异常，此时已经恢复连接状态，是否关闭连接仍由 closeConnection 决定
+     */
+    public static <T> CursorIterator<T> open(Connection conn, boolean closeConnection, String sql, Object[] params,
+                                             Class<T> clazz, int fetchSize) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        PreparedStatement state = null;
+        ResultSet resultSet = null;
+        try {
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            state = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            state.setFetchSize(fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE);
+            DatabaseUtil.setParameters(state, params);
+            long start = System.nanoTime();
+            try {
+                SqlMetrics.recordPrepare(sql, state);
+                resultSet = state.executeQuery();
+            } finally {
+                // 游标只统计打开的耗时，行数未知
+                SqlMetrics.record(sql, params, start, -1, null == resultSet);
+            }
+            EntityRowMapper<T> rowMapper = Map.class.isAssignableFrom(clazz) ? null : EntityRowMapper.of(clazz);
+            return new CursorIterator<>(conn, closeConnection, autoCommit, state, resultSet, rowMapper);
+        } catch (SQLException | RuntimeException e) {
+            DatasourceUtil.close(null, state, resultSet);
+            restore(conn, autoCommit);
+            if (closeConnection) {
+                DatasourceUtil.close(conn);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            try {
+                hasNext = resultSet.next();
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("读取游标失败", e);
+            }
+            fetched = true;
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            if (rowMapper == null) {
+                return (T) CompactRow.read(resultSet, header);
+            }
+            return rowMapper.mapRow(resultSet, plan);
+        } catch (SQLException | RuntimeException e) {
+            close();
+            throw new IllegalStateException("读取游标失败", e);
+        }
+    }
+
+    /**
+     * 转换为顺序流，流关闭时关闭游标，必须在 try-with-resources 中使用或者把流消费完
+     *
+     * @return Stream
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        DatasourceUtil.close(null, state, resultSet);
+        restore(conn, autoCommit);
+        if (closeConnection) {
+            DatasourceUtil.close(conn);
+        }
+    }
+
+    /**
+     * 游标只读，结束事务后恢复原来的自动提交设置
+     */
+    private static void restore(Connection conn, boolean autoCommit) {
+        if (!autoCommit) {
+            return;
+        }
+        try {
+            conn.commit();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.error("恢复自动提交失败: {}", ExceptionUtil.buildErrorMessage(e));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.ExceptionUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DAO 层共用的有界线程池<br>
+ * 线程数默认为 CPU 核数（至少2个），注册了连接池后调整为连接池的最大连接数，也可以通过 -Ddao.executor.size 固定；
+ * 队列满时由调用线程直接执行，不会无限堆积任务<br>
+ * {@link #supplyAsync(Callable)} 提交的异步任务在运行时支持虚拟线程（JDK 21+）时跑在虚拟线程上，
+ * 可以通过 -Ddao.executor.virtual=false 关闭；同时在途的任务数不超过线程数加队列长度，超过时提交方阻塞等待。
+ * 虚拟线程不受线程数限制，同时执行的任务数另外限制为线程数（即连接池大小），其余任务在虚拟线程上排队等待，
+ * 不会同时向连接池要几百个连接
+ *
+ * @author ivan
+ */
+@Slf4j
+public final class DaoExecutor {
+
+    public static final int POOL_SIZE = Integer.getInteger("dao.executor.size", Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private static final int QUEUE_SIZE = Integer.getInteger("dao.executor.queue", 256);
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    /**
+     * 虚拟线程执行器，运行时不支持或者关闭时为null
+     */
+    private static final ExecutorService VIRTUAL_EXECUTOR;
+
+    /**
+     * 当前线程正在执行异步任务，虚拟线程不是 DaoThread，只能这样标记
+     */
+    private static final ThreadLocal<Boolean> IN_TASK = new ThreadLocal<>();
+
+    /**
+     * 异步任务的在途许可，调整线程数时整体替换
+     */
+    private static volatile Semaphore inFlight;
+
+    /**
+     * 虚拟线程上同时执行的任务数，与线程数（连接池大小）一致，调整线程数时整体替换
+     */
+    private static volatile Semaphore running;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), new DaoThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+        VIRTUAL_EXECUTOR = Boolean.parseBoolean(System.getProperty("dao.executor.virtual", "true")) ? virtualExecutor() : null;
+        inFlight = new Semaphore(POOL_SIZE + QUEUE_SIZE);
+        running = new Semaphore(POOL_SIZE);
+    }
+
+    private DaoExecutor() {
+    }
+
+    public static ExecutorService get() {
+        return EXECUTOR;
+    }
+
+    /**
+     * 按连接池大小调整线程数，配置了 -Ddao.executor.size 时不调整
+     *
+     * @param poolSize 连接池的最大连接数，小于等于0时忽略
+     */
+    public static synchronized void sizeToPool(int poolSize) {
+        if (poolSize <= 0 || null != System.getProperty("dao.executor.size") || poolSize == EXECUTOR.getMaximumPoolSize()) {
+            return;
+        }
+        if (poolSize > EXECUTOR.getMaximumPoolSize()) {
+            EXECUTOR.setMaximumPoolSize(poolSize);
+            EXECUTOR.setCorePoolSize(poolSize);
+        } else {
+            EXECUTOR.setCorePoolSize(poolSize);
+            EXECUTOR.setMaximumPoolSize(poolSize);
+        }
+        inFlight = new Semaphore(poolSize + QUEUE_SIZE);
+        running = new Semaphore(poolSize);
+        log.info("DAO 线程池大小调整为 {}", poolSize);
+    }
+
+    /**
+     * 异步执行任务；在途任务已满时阻塞调用线程，在线程池里调用时直接在当前线程执行
+     *
+     * @param task 任务，抛出的异常使返回的 future 异常完成
+     * @return CompletableFuture
+     */
+    public static <V> CompletableFuture<V> supplyAsync(Callable<V> task) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        if (inExecutorThread()) {
+            // 池内任务再提交子任务时直接执行，避免互相等待占满在途许可
+            complete(future, task);
+            return future;
+        }
+        Semaphore permits = inFlight;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        Semaphore slots = null != VIRTUAL_EXECUTOR ? running : null;
+        Runnable runnable = () -> {
+            try {
+                if (null != slots) {
+                    slots.acquire();
+                }
+            } catch (InterruptedException e) {
+                permits.release();
+                future.completeExceptionally(e);
+                return;
+            }
+            IN_TASK.set(Boolean.TRUE);
+            try {
+                complete(future, task);
+            } finally {
+                IN_TASK.remove();
+                if (null != slots) {
+                    slots.release();
+                }
+                permits.release();
+            }
+        };
+        try {
+            (null != VIRTUAL_EXECUTOR ? VIRTUAL_EXECUTOR : EXECUTOR).execute(runnable);
+        } catch (RuntimeException e) {
+            permits.release();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 当前线程是否是线程池里的线程，池内任务再提交子任务并等待时可能把线程池占满，此时应该在当前线程直接执行
+     */
+    public static boolean inExecutorThread() {
+        return Thread.currentThread() instanceof DaoThread || Boolean.TRUE.equals(IN_TASK.get());
+    }
+
+    /**
+     * 异步任务是否跑在虚拟线程上
+     */
+    public static boolean isVirtual() {
+        return null != VIRTUAL_EXECUTOR;
+    }
+
+    /**
+     * 已提交还没有完成的异步任务数
+     */
+    public static int getInFlight() {
+        return Math.max(0, EXECUTOR.getMaximumPoolSize() + QUEUE_SIZE - inFlight.availablePermits());
+    }
+
+    private static <V> void complete(CompletableFuture<V> future, Callable<V> task) {
+        try {
+            future.complete(task.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static ExecutorService virtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("创建虚拟线程执行器失败: {}", ExceptionUtil.buildErrorMessage(e));
+            return null;
+        }
+    }
+
+    private static final class DaoThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new DaoThread(runnable, "dao-executor-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class DaoThread extends Thread {
+
+        DaoThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.ExceptionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.TransactionState;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * 绑定到当前线程的事务<br>
+ * 范围内 BaseDao、BaseDaoImpl 通过 {@link DatasourceUtil#getConn()}、{@link DatasourceUtil#getReadConn()} 拿到的都是同一个连接，
+ * 只从连接池借一次，最外层 {@link #commit()} 时统一提交；没有提交就关闭、或者范围内有操作回滚过时整体回滚。
+ * 范围内对连接的 close、commit、setAutoCommit 不生效，rollback 只把事务标记为回滚<br>
+ * 嵌套使用时内层加入外层事务；异步任务（{@link AsyncBaseDao}）跑在其他线程上，不会加入当前事务
+ * <pre>
+ * try (DaoTransaction tx = DaoTransaction.begin()) {
+ *     ...
+ *     tx.commit();
+ * }
+ * </pre>
+ *
+ * @author ivan
+ */
+@Slf4j
+public final class DaoTransaction implements AutoCloseable {
+
+    private static final ThreadLocal<Unit> CURRENT = new ThreadLocal<>();
+
+    private final Unit unit;
+
+    /**
+     * 是否是最外层，只有最外层真正提交、回滚和归还连接
+     */
+    private final boolean outermost;
+
+    private boolean committed;
+
+    private boolean closed;
+
+    private DaoTransaction(Unit unit, boolean outermost) {
+        this.unit = unit;
+        this.outermost = outermost;
+    }
+
+    /**
+     * 开始事务，当前线程已经有事务时加入
+     *
+     * @return DaoTransaction，必须关闭
+     * @throws SQLException 获取连接失败
+     */
+    public static DaoTransaction begin() throws SQLException {
+        Unit unit = CURRENT.get();
+        if (null != unit) {
+            return new DaoTransaction(unit, false);
+        }
+        Connection connection = DatasourceUtil.getInstance().getConn();
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            DatasourceUtil.close(connection);
+            throw e;
+        }
+        unit = new Unit(connection);
+        CURRENT.set(unit);
+        return new DaoTransaction(unit, true);
+    }
+
+    /**
+     * 在事务里执行任务，正常返回时提交，抛出异常时回滚
+     *
+     * @param task 任务
+     * @return 任务的返回值
+     * @throws Exception 任务抛出的异常，或者提交失败
+     */
+    public static <V> V execute(Callable<V> task) throws Exception {
+        try (DaoTransaction tx = begin()) {
+            V result = task.call();
+            tx.commit();
+            return result;
+        }
+    }
+
+    /**
+     * 当前线程的事务连接，没有事务时返回null
+     */
+    public static Connection currentConnection() {
+        Unit unit = CURRENT.get();
+        return null == unit ? null : unit.bound;
+    }
+
+    public static boolean isActive() {
+        return null != CURRENT.get();
+    }
+
+    /**
+     * 记录事务里写过的表，提交后再清空一次这些表的查询结果缓存
+     */
+    static void touched(String tableName) {
+        Unit unit = CURRENT.get();
+        if (null != unit && null != tableName) {
+            unit.tables.add(tableName);
+        }
+    }
+
+    /**
+     * 提交：内层只记录已提交，最外层真正提交
+     *
+     * @throws SQLException 事务已经被标记为回滚（此时已经回滚），或者提交失败
+     */
+    public void commit() throws SQLException {
+        if (closed || committed) {
+            throw new SQLException("事务已经结束");
+        }
+        if (!outermost) {
+            committed = true;
+            return;
+        }
+        if (unit.rollbackOnly || failed(unit.connection)) {
+            unit.connection.rollback();
+            unit.rollbackOnly = false;
+            committed = true;
+            throw new SQLException("事务中有操作失败，已回滚");
+        }
+        unit.connection.commit();
+        committed = true;
+        for (String table : unit.tables) {
+            ResultCache.invalidate(table);
+        }
+    }
+
+    /**
+     * 没有提交时回滚（内层只标记回滚），最外层归还连接
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!committed) {
+            unit.rollbackOnly = true;
+        }
+        if (!outermost) {
+            return;
+        }
+        CURRENT.remove();
+        try {
+            if (!committed) {
+                unit.connection.rollback();
+            }
+            unit.connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.error("事务回滚异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(unit.connection);
+        }
+    }
+
+    /**
+     * 范围内有语句执行失败时 PostgreSQL 的事务处于失败状态，此时提交实际上是回滚
+     */
+    private static boolean failed(Connection connection) {
+        try {
+            if (connection.isWrapperFor(BaseConnection.class)) {
+                return connection.unwrap(BaseConnection.class).getTransactionState() == TransactionState.FAILED;
+            }
+        } catch (SQLException e) {
+            log.warn("获取事务状态失败: {}", ExceptionUtil.buildErrorMessage(e));
+        }
+        return false;
+    }
+
+    /**
+     * 一个事务共用的连接和状态
+     */
+    private static final class Unit {
+
+        private final Connection connection;
+
+        /**
+         * 交给 DAO 使用的连接，屏蔽 close、commit、setAutoCommit
+         */
+        private final Connection bound;
+
+        private final Set<String> tables = new LinkedHashSet<>();
+
+        private boolean rollbackOnly;
+
+        private Unit(Connection connection) {
+            this.connection = connection;
+            this.bound = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                            case "commit":
+                            case "setAutoCommit":
+                                return null;
+                            case "rollback":
+                                if (null == args || args.length == 0) {
+                                    rollbackOnly = true;
+                                    return null;
+                                }
+                                break;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.xxw.base.dao;
+
+import com.xxw.annotation.Table;
+import com.xxw.base.util.ReflectionUtil;
+import com.xxw.base.util.StringUtils;
+import jdk.nashorn.internal.ir.annotations.Ignore;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体元数据<br>
+ * 按Class缓存表名、映射到数据库的字段列表以及主键，字段在第一次使用时解析并设置为可访问，
+ * 之后所有的sql生成以及参数绑定都复用同一份元数据，不再每次遍历 getDeclaredFields()
+ *
+ * @author ivan
+ */
+public final class EntityMeta {
+
+    private static final String TABLE_PREFIX = "tbl";
+
+    public static final String PRIMARY_KEY_FILED_NAME = "id";
+
+    private static final Map<Class<?>, EntityMeta> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类型
+     */
+    private final Class<?> entityClass;
+
+    /**
+     * 表名
+     */
+    private final String tableName;
+
+    /**
+     * 当前类以及父类中所有映射到数据库的字段，子类字段在前
+     */
+    private final List<Column> columns;
+
+    /**
+     * 当前类自己声明的字段
+     */
+    private final List<Column> declaredColumns;
+
+    /**
+     * 字段名 -> 字段
+     */
+    private final Map<String, Column> columnMap;
+
+    /**
+     * 主键字段，没有名为id的字段时为null
+     */
+    private final Column primaryKey;
+
+    /**
+     * 可以从查询结果回填的属性（非静态、非final，包括数组、集合等非基础类型），key为去掉下划线的小写属性名
+     */
+    private final Map<String, Column> properties;
+
+    /**
+     * 无参构造器，没有时为null
+     */
+    private final Constructor<?> constructor;
+
+    private EntityMeta(Class<?> entityClass) {
+        this.entityClass = entityClass;
+        this.tableName = resolveTableName(entityClass);
+
+        List<Column> allColumns = new ArrayList<>();
+        List<Column> ownColumns = new ArrayList<>();
+        Map<String, Column> nameMap = new LinkedHashMap<>();
+        Map<String, Column> propertyMap = new HashMap<>();
+        Column pk = null;
+
+        Class<?> clazz = entityClass;
+        while (clazz != null && clazz != Object.class) {
+            for (Field field : clazz.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Column column = new Column(field);
+                propertyMap.putIfAbsent(normalize(column.getName()), column);
+                if (!isColumn(field)) {
+                    continue;
+                }
+                allColumns.add(column);
+                if (clazz == entityClass) {
+                    ownColumns.add(column);
+                }
+                nameMap.putIfAbsent(column.getName(), column);
+                if (pk == null && PRIMARY_KEY_FILED_NAME.equals(column.getName())) {
+                    pk = column;
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+
+        this.columns = Collections.unmodifiableList(allColumns);
+        this.declaredColumns = Collections.unmodifiableList(ownColumns);
+        this.columnMap = Collections.unmodifiableMap(nameMap);
+        this.primaryKey = pk;
+        this.properties = Collections.unmodifiableMap(propertyMap);
+        this.constructor = resolveConstructor(entityClass);
+    }
+
+    /**
+     * 获取实体类型对应的元数据，同一个Class只解析一次
+     *
+     * @param clazz 实体对象的类型
+     * @return EntityMeta
+     */
+    public static EntityMeta of(Class<?> clazz) {
+        EntityMeta meta = CACHE.get(clazz);
+        if (meta == null) {
+            meta = CACHE.computeIfAbsent(clazz, EntityMeta::new);
+        }
+        return meta;
+    }
+
+    /**
+     * 判断字段是否映射到数据库：私有、非静态、非final、基础类型并且没有 @Ignore 注解
+     */
+    private static boolean isColumn(Field field) {
+        int modifiers = field.getModifiers();
+        return Modifier.isPrivate(modifiers) && !Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)
+                && ReflectionUtil.isBaseType(field) && null == field.getAnnotation(Ignore.class);
+    }
+
+    private static Constructor<?> resolveConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> ctor = clazz.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return ctor;
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 属性名、列名统一成去掉下划线的小写形式，PostgreSQL 未加引号的列名都会转成小写
+     */
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 跟实体类返回对那个的表名，只支持表名下划线并且前缀是tbl_对应的实体是驼峰命名规则
+     */
+    private static String resolveTableName(Class<?> clazz) {
+        String name = "";
+        Table table = clazz.getAnnotation(Table.class);
+        if (table != null) {
+            name = table.name();
+        }
+        if (StringUtils.isEmpty(name)) {
+            name = TABLE_PREFIX + StringUtils.HumpToUnderline(clazz.getSimpleName());
+        }
+        return name;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    public List<Column> getDeclaredColumns() {
+        return declaredColumns;
+    }
+
+    public Column getColumn(String name) {
+        return columnMap.get(name);
+    }
+
+    public Column getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * 根据查询结果的列名查找可回填的属性，忽略大小写和下划线
+     *
+     * @param columnLabel 列名
+     * @return 属性，没有对应属性时返回null
+     */
+    public Column getProperty(String columnLabel) {
+        return properties.get(normalize(columnLabel));
+    }
+
+    /**
+     * 所有可以从查询结果回填的属性，比 {@link #getColumns()} 多了数组、集合以及 @Ignore 的字段
+     *
+     * @return 属性集合
+     */
+    public Collection<Column> getProperties() {
+        return properties.values();
+    }
+
+    public boolean isInstantiable() {
+        return constructor != null;
+    }
+
+    /**
+     * 通过无参构造器创建实体对象
+     *
+     * @return 实体对象
+     */
+    public Object newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException(entityClass.getName() + " 没有无参构造器");
+        }
+        try {
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("实例化失败: " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * 获取对象中值不为null的字段，顺序与 {@link #getColumns()} 一致
+     *
+     * @param object 实体对象
+     * @return 字段集合
+     */
+    public List<Column> getNonNullColumns(Object object) {
+        List<Column> result = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            if (null != column.getValue(object)) {
+                result.add(column);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 实体中映射到数据库的一个字段
+     */
+    public static final class Column {
+
+        private final Field field;
+
+        private final String name;
+
+        private final Class<?> type;
+
+        private Column(Field field) {
+            this.field = field;
+            this.name = field.getName();
+            this.type = field.getType();
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public boolean isPrimaryKey() {
+            return PRIMARY_KEY_FILED_NAME.equals(name);
+        }
+
+        /**
+         * 读取字段值，字段在解析时已经设置为可访问
+         *
+         * @param object 实体对象
+         * @return 字段值
+         */
+        public Object getValue(Object object) {
+            try {
+                return field.get(object);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("读取字段失败: " + name, e);
+            }
+        }
+
+        /**
+         * 设置字段值
+         *
+         * @param object 实体对象
+         * @param value  字段值
+         */
+        public void setValue(Object object, Object value) {
+            try {
+                field.set(object, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("设置字段失败: " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.xxw.base.dao;
+
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.xxw.base.util.DatabaseUtil;
+import com.xxw.base.util.ExceptionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ClassUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 查询结果到实体对象的映射器<br>
+ * 按 (实体类型, 查询列集合) 缓存映射计划：第 i 列回填到哪个属性，只在第一次遇到该列集合时解析。
+ * 直接从 ResultSet 读取列值写入属性，不再经过 Map -> JSON 字符串 -> 实体 的两次序列化
+ *
+ * @param <T> 实体类型
+ * @author ivan
+ */
+@Slf4j
+public final class EntityRowMapper<T> {
+
+    private static final Map<Class<?>, EntityRowMapper<?>> MAPPERS = new ConcurrentHashMap<>();
+
+    /**
+     * 单个实体最多缓存的映射计划数，超出后清空重建，防止动态sql把缓存撑大
+     */
+    private static final int MAX_PLAN_SIZE = 256;
+
+    private final Class<T> clazz;
+
+    private final EntityMeta meta;
+
+    private final Map<String, EntityMeta.Column[]> plans = new ConcurrentHashMap<>();
+
+    private EntityRowMapper(Class<T> clazz) {
+        this.clazz = clazz;
+        this.meta = EntityMeta.of(clazz);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityRowMapper<T> of(Class<T> clazz) {
+        EntityRowMapper<?> mapper = MAPPERS.get(clazz);
+        if (mapper == null) {
+            mapper = MAPPERS.computeIfAbsent(clazz, EntityRowMapper::new);
+        }
+        return (EntityRowMapper<T>) mapper;
+    }
+
+    /**
+     * 读取ResultSet的全部行并映射为实体集合
+     *
+     * @param resultSet 查询结果
+     * @return 实体集合
+     * @throws SQLException 读取结果集异常
+     */
+    public List<T> mapRows(ResultSet resultSet) throws SQLException {
+        EntityMeta.Column[] plan = getPlan(resultSet.getMetaData());
+        List<T> list = new ArrayList<>();
+        while (resultSet.next()) {
+            list.add(mapRow(resultSet, plan));
+        }
+        return list;
+    }
+
+    /**
+     * 根据结果集的列信息获取映射计划
+     *
+     * @param md 结果集元数据
+     * @return 第 i 个元素为第 i+1 列对应的属性，没有对应属性时为null
+     * @throws SQLException 读取元数据异常
+     */
+    public EntityMeta.Column[] getPlan(ResultSetMetaData md) throws SQLException {
+        int columnCount = md.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = md.getColumnLabel(i + 1);
+        }
+        return getPlan(labels);
+    }
+
+    public EntityMeta.Column[] getPlan(String[] labels) {
+        String key = String.join(",", labels);
+        EntityMeta.Column[] plan = plans.get(key);
+        if (plan == null) {
+            plan = new EntityMeta.Column[labels.length];
+            for (int i = 0; i < labels.length; i++) {
+                plan[i] = meta.getProperty(labels[i]);
+            }
+            if (plans.size() >= MAX_PLAN_SIZE) {
+                plans.clear();
+            }
+            plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * 将结果集当前行映射为实体对象
+     *
+     * @param resultSet 查询结果，游标已经指向要读取的行
+     * @param plan      映射计划
+     * @return 实体对象
+     * @throws SQLException 读取结果集异常
+     */
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet resultSet, EntityMeta.Column[] plan) throws SQLException {
+        if (!meta.isInstantiable()) {
+            return TypeUtils.castToJavaBean(DatabaseUtil.readRow(resultSet, resultSet.getMetaData()), clazz);
+        }
+        T obj = (T) meta.newInstance();
+        for (int i = 0; i < plan.length; i++) {
+            if (plan[i] != null) {
+                setProperty(obj, plan[i], DatabaseUtil.getResultSetValue(resultSet, i + 1));
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * 将一行Map数据映射为实体对象
+     *
+     * @param row 列名 -> 值
+     * @return 实体对象
+     */
+    @SuppressWarnings("unchecked")
+    public T mapRow(Map<String, ?> row) {
+        if (!meta.isInstantiable()) {
+            return TypeUtils.castToJavaBean((Map<String, Object>) row, clazz);
+        }
+        T obj = (T) meta.newInstance();
+        for (Map.Entry<String, ?> entry : row.entrySet()) {
+            EntityMeta.Column column = meta.getProperty(entry.getKey());
+            if (column != null) {
+                setProperty(obj, column, entry.getValue());
+            }
+        }
+        return obj;
+    }
+
+    private void setProperty(T obj, EntityMeta.Column column, Object value) {
+        if (value == null) {
+            // 基础类型保持默认值，其他类型本来就是null
+            return;
+        }
+        try {
+            column.setValue(obj, convert(value, column));
+        } catch (Exception e) {
+            log.error("字段映射失败 {}.{}: {}", clazz.getSimpleName(), column.getName(), ExceptionUtil.buildErrorMessage(e));
+        }
+    }
+
+    /**
+     * 类型一致时直接赋值，否则交给 fastjson 的类型转换，与原来 JSON 反序列化的转换规则保持一致
+     */
+    private Object convert(Object value, EntityMeta.Column column) {
+        Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(column.getType());
+        if (type.isInstance(value)) {
+            return value;
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        return TypeUtils.cast(value, column.getField().getGenericType(), ParserConfig.getGlobalInstance());
+    }
+}
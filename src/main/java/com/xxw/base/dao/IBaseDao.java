@@ -1,8 +1,11 @@
 package com.xxw.base.dao;
 
 import java.sql.Connection;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface IBaseDao<T> {
 
@@ -17,6 +20,17 @@ public interface IBaseDao<T> {
 
     int insertBatch(List<T> domains) throws Exception;
 
+    /**
+     * 使用 PostgreSQL COPY 批量插入
+     * @param connection 数据库连接
+     * @param domains 要插入的数据
+     * @return 成功返回0，失败返回-1
+     * @throws Exception 异常
+     */
+    int insertBatchByCopy(Connection connection, List<T> domains) throws Exception;
+
+    int insertBatchByCopy(List<T> domains) throws Exception;
+
     int insert(T domain) throws Exception;
 
     /**
@@ -37,8 +51,45 @@ public interface IBaseDao<T> {
      */
     List<T> searchByConditionsWithoutConnection(Map<String, Object> conditions)throws Exception;
 
+    /**
+     * 根据多个条件来查询，只查询指定字段，其余属性为null
+     * @param conditions 条件
+     * @param fields 要查询的字段，为空时查询全部字段
+     * @return 返回数据
+     * @throws Exception 异常
+     */
+    List<T> searchByConditionsWithoutConnection(Map<String, Object> conditions, Collection<String> fields)throws Exception;
+
+    /**
+     * 根据多个条件来查询，只查询投影类型需要的字段
+     * @param conditions 条件
+     * @param projection 投影类型，DTO类或者只有getter的接口
+     * @return 返回数据
+     * @throws Exception 异常
+     */
+    <R> List<R> searchByConditionsWithoutConnection(Map<String, Object> conditions, Class<R> projection)throws Exception;
+
     T searchOneByConditionsWithoutConnection(Map<String, Object> conditions)throws Exception;
 
+    /**
+     * 根据多个条件流式查询，使用游标分批读取，Stream 关闭时释放连接，必须在 try-with-resources 中使用
+     * @param conditions 条件
+     * @param fetchSize 每次从数据库拉取的行数
+     * @return 数据流
+     * @throws Exception 异常
+     */
+    Stream<T> streamByConditions(Map<String, Object> conditions, int fetchSize) throws Exception;
+
+    /**
+     * 根据多个条件使用游标逐行查询，每读取一行回调一次
+     * @param conditions 条件
+     * @param fetchSize 每次从数据库拉取的行数
+     * @param consumer 行回调
+     * @return 读取的行数
+     * @throws Exception 异常
+     */
+    int searchByConditions(Map<String, Object> conditions, int fetchSize, Consumer<? super T> consumer) throws Exception;
+
     /**
      * 根据某个字段在某个范围内进行查询
      * @param field 要查询的字段
@@ -48,6 +99,16 @@ public interface IBaseDao<T> {
      */
     List<T> batchSearchByFieldWithoutConnection(String field, List<?> fieldValues)throws Exception;
 
+    /**
+     * 根据某个字段在某个范围内进行查询，只查询投影类型需要的字段
+     * @param field 要查询的字段
+     * @param fieldValues 要字段值集合
+     * @param projection 投影类型，DTO类或者只有getter的接口
+     * @return 返回数据
+     * @throws Exception 异常
+     */
+    <R> List<R> batchSearchByFieldWithoutConnection(String field, List<?> fieldValues, Class<R> projection)throws Exception;
+
     /**
      * 根据某个条件批量删除
      */
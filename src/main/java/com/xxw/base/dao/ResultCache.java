@@ -0,0 +1,239 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.CompactRow;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 按表缓存的查询结果<br>
+ * 每张表最多一个缓存，key 为查询方式加条件，容量满时淘汰最久没有访问的结果，超过存活时间的结果视为未命中；
+ * 通过 BaseDao、BaseDaoImpl 对同一张表做的增删改都会调用 {@link #invalidate(String)} 清空该表的缓存。
+ * 直接执行的sql语句（updateBySql 等）不会触发失效，只能等存活时间到期<br>
+ * 放入和读取时都复制结果（集合、Map、实体对象逐字段浅复制，Date 和数组也复制），调用方修改拿到的对象不会影响缓存和其他线程
+ *
+ * @author ivan
+ */
+public final class ResultCache {
+
+    /**
+     * 表名 -> 缓存
+     */
+    private static final Map<String, ResultCache> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String tableName;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final Map<Object, Entry> entries;
+
+    /**
+     * 每次失效加一，查询开始后发生过失效的结果不再放入缓存
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private ResultCache(String tableName, int maxSize, long ttlMillis) {
+        this.tableName = tableName;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                if (size() > ResultCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 为表启用缓存，已经启用时返回已有的缓存
+     *
+     * @param tableName 表名
+     * @param maxSize   最多缓存多少个查询结果
+     * @param ttlMillis 结果存活时间（毫秒）
+     * @return ResultCache
+     */
+    public static ResultCache register(String tableName, int maxSize, long ttlMillis) {
+        return REGISTRY.computeIfAbsent(tableName, key -> new ResultCache(key, maxSize, ttlMillis));
+    }
+
+    /**
+     * 表的缓存，没有启用时返回null
+     */
+    public static ResultCache forTable(String tableName) {
+        return null == tableName ? null : REGISTRY.get(tableName);
+    }
+
+    /**
+     * 清空表的缓存，没有启用缓存时什么都不做
+     */
+    public static void invalidate(String tableName) {
+        // 事务里的修改在提交后才对其他线程可见，提交后再清空一次
+        DaoTransaction.touched(tableName);
+        ResultCache cache = forTable(tableName);
+        if (null != cache) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param parts 查询方式、条件等，Map 按内容比较
+     */
+    public static Object key(Object... parts) {
+        return Arrays.asList(parts);
+    }
+
+    /**
+     * 读取缓存，没有命中时调用 loader 查询；loader 返回null（查询失败）时不缓存。
+     * 在 {@link DaoTransaction} 范围内直接查询，既不读也不写缓存，避免缓存未提交的数据
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(Object key, Supplier<V> loader) {
+        if (DaoTransaction.isActive()) {
+            return loader.get();
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (null != entry && now - entry.loadedAt < ttlNanos) {
+                hits.increment();
+                return (V) copyOf(entry.value);
+            }
+        }
+        misses.increment();
+        long loadVersion = version.get();
+        V value = loader.get();
+        if (null != value) {
+            synchronized (entries) {
+                if (loadVersion == version.get()) {
+                    entries.put(key, new Entry(copyOf(value), now));
+                }
+            }
+        }
+        return value;
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            version.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * 复制查询结果：集合和 Map 复制容器和元素，实体对象通过无参构造器新建后逐字段复制；
+     * 不可变的值（字符串、数字、CompactRow、只有getter的投影接口等）原样返回
+     */
+    static Object copyOf(Object value) {
+        if (null == value || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof Enum || value instanceof CompactRow) {
+            return value;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+            for (Object element : list) {
+                copy.add(copyOf(element));
+            }
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<Object, Object> copy = new LinkedHashMap<>(map.size() * 2);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                copy.put(entry.getKey(), copyOf(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        if (value.getClass().getName().startsWith("java.")) {
+            // java.time 等 JDK 类型按不可变处理
+            return value;
+        }
+        EntityMeta meta = EntityMeta.of(value.getClass());
+        if (!meta.isInstantiable()) {
+            return value;
+        }
+        Object copy = meta.newInstance();
+        // 与 EntityRowMapper 回填的属性一致，不只是可插入的字段
+        for (EntityMeta.Column column : meta.getProperties()) {
+            Object fieldValue = column.getValue(value);
+            if (null != fieldValue) {
+                column.setValue(copy, copyOf(fieldValue));
+            }
+        }
+        return copy;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long loadedAt;
+
+        private Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
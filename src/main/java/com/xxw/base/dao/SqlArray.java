@@ -0,0 +1,138 @@
+package com.xxw.base.dao;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 以单个数组参数绑定的一组值，配合 field = any(?) 使用<br>
+ * 不管有多少个值sql文本都不变，可以复用同一个预编译语句，也不受绑定参数个数的限制；
+ * 数组元素类型按第一个非null元素推断，绑定时通过 {@link Connection#createArrayOf(String, Object[])} 创建
+ *
+ * @author ivan
+ */
+public final class SqlArray {
+
+    /**
+     * 单条语句里一个数组最多放多少个值，超过时调用方按块拆分
+     */
+    public static final int MAX_ELEMENTS = 100_000;
+
+    private final String typeName;
+
+    private final Object[] elements;
+
+    private SqlArray(String typeName, Object[] elements) {
+        this.typeName = typeName;
+        this.elements = elements;
+    }
+
+    /**
+     * @param values 集合、对象数组或者基本类型数组
+     * @return SqlArray
+     */
+    public static SqlArray of(Object values) {
+        Object[] elements;
+        if (values instanceof Collection) {
+            elements = ((Collection<?>) values).toArray();
+        } else if (values instanceof Object[]) {
+            elements = ((Object[]) values).clone();
+        } else if (null != values && values.getClass().isArray()) {
+            elements = new Object[java.lang.reflect.Array.getLength(values)];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = java.lang.reflect.Array.get(values, i);
+            }
+        } else {
+            elements = null == values ? new Object[0] : new Object[]{values};
+        }
+        String typeName = null;
+        for (int i = 0; i < elements.length; i++) {
+            // java.util.Date 的 toString 不是数据库能识别的格式
+            if (elements[i] instanceof Date && !(elements[i] instanceof Timestamp) && !(elements[i] instanceof java.sql.Date)) {
+                elements[i] = new Timestamp(((Date) elements[i]).getTime());
+            }
+            if (null == typeName && null != elements[i]) {
+                typeName = typeOf(elements[i]);
+            }
+        }
+        return new SqlArray(null == typeName ? "varchar" : typeName, elements);
+    }
+
+    /**
+     * 把值按 {@link #MAX_ELEMENTS} 拆分成多个数组
+     */
+    public static List<SqlArray> chunks(List<?> values) {
+        if (null == values || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SqlArray> arrays = new ArrayList<>((values.size() + MAX_ELEMENTS - 1) / MAX_ELEMENTS);
+        for (int from = 0; from < values.size(); from += MAX_ELEMENTS) {
+            arrays.add(of(values.subList(from, Math.min(from + MAX_ELEMENTS, values.size()))));
+        }
+        return arrays;
+    }
+
+    private static String typeOf(Object element) {
+        if (element instanceof Integer) {
+            return "int4";
+        } else if (element instanceof Long) {
+            return "int8";
+        } else if (element instanceof Short) {
+            return "int2";
+        } else if (element instanceof Double) {
+            return "float8";
+        } else if (element instanceof Float) {
+            return "float4";
+        } else if (element instanceof BigDecimal) {
+            return "numeric";
+        } else if (element instanceof Boolean) {
+            return "bool";
+        } else if (element instanceof UUID) {
+            return "uuid";
+        } else if (element instanceof java.sql.Date) {
+            return "date";
+        } else if (element instanceof Timestamp) {
+            return "timestamp";
+        }
+        return "varchar";
+    }
+
+    public String getTypeName() {
+        return typeName;
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    /**
+     * 在指定连接上创建 java.sql.Array
+     */
+    public Array toArray(Connection conn) throws SQLException {
+        return conn.createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof SqlArray && typeName.equals(((SqlArray) o).typeName) && Arrays.equals(elements, ((SqlArray) o).elements));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * typeName.hashCode() + Arrays.hashCode(elements);
+    }
+
+    @Override
+    public String toString() {
+        return typeName + Arrays.toString(elements);
+    }
+}
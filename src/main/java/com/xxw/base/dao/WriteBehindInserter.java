@@ -0,0 +1,303 @@
+package com.xxw.base.dao;
+
+import com.xxw.base.util.DatasourceUtil;
+import com.xxw.base.util.ExceptionUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按表合并单行插入的后写缓冲<br>
+ * 请求线程把行放进无锁队列后立即返回 future，后台线程在攒够 maxBatch 行或者最早的一行等待超过 maxDelay 时，
+ * 把队列里的行按非空字段分组、每组一条多行 insert 写入；整条语句失败时退回逐行插入，每一行的 future 拿到各自真实的结果
+ * （与 {@link BaseDao#saveObject(Object, String)} 一致：成功为1，失败为-1）。
+ * 排队的行数超过 maxBatch 的 {@link #QUEUE_FACTOR} 倍时提交方阻塞等待；
+ * 当前线程在 {@link DaoTransaction} 范围内时直接在事务里插入，不进缓冲
+ *
+ * @author ivan
+ */
+@Slf4j
+public final class WriteBehindInserter implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH = 500;
+
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 20L;
+
+    /**
+     * 最多排队 maxBatch 的多少倍
+     */
+    public static final int QUEUE_FACTOR = 20;
+
+    /**
+     * 表名 -> 缓冲
+     */
+    private static final Map<String, WriteBehindInserter> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String tableName;
+
+    private final int maxBatch;
+
+    private final long maxDelayNanos;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Semaphore capacity;
+
+    private final Thread flusher;
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder fallbacks = new LongAdder();
+
+    private volatile boolean closed;
+
+    private WriteBehindInserter(String tableName, int maxBatch, long maxDelayMillis) {
+        this.tableName = tableName;
+        this.maxBatch = maxBatch > 0 ? maxBatch : DEFAULT_MAX_BATCH;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis > 0 ? maxDelayMillis : DEFAULT_MAX_DELAY_MILLIS);
+        this.capacity = new Semaphore(this.maxBatch * QUEUE_FACTOR);
+        this.flusher = new Thread(this::run, "write-behind-" + tableName);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 为表启用后写缓冲，已经启用时返回已有的缓冲
+     *
+     * @param tableName      表名
+     * @param maxBatch       攒够多少行写一次
+     * @param maxDelayMillis 最早的一行最多等待多久（毫秒）
+     * @return WriteBehindInserter
+     */
+    public static WriteBehindInserter register(String tableName, int maxBatch, long maxDelayMillis) {
+        return REGISTRY.computeIfAbsent(tableName, key -> new WriteBehindInserter(key, maxBatch, maxDelayMillis));
+    }
+
+    /**
+     * 表的缓冲，没有启用时返回null
+     */
+    public static WriteBehindInserter forTable(String tableName) {
+        return null == tableName ? null : REGISTRY.get(tableName);
+    }
+
+    /**
+     * 写完所有缓冲里的行并停止后台线程，关闭连接池之前调用
+     */
+    public static void closeAll() {
+        for (WriteBehindInserter inserter : new ArrayList<>(REGISTRY.values())) {
+            inserter.close();
+        }
+    }
+
+    /**
+     * 提交一行
+     *
+     * @param row 实体对象
+     * @return 插入结果，成功为1，失败为-1
+     */
+    public CompletableFuture<Integer> submit(Object row) {
+        if (DaoTransaction.isActive()) {
+            return CompletableFuture.completedFuture(BaseDao.saveObject(row, tableName));
+        }
+        if (closed) {
+            throw new IllegalStateException(tableName + " 的后写缓冲已关闭");
+        }
+        Pending pending = new Pending(row);
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+            return pending.future;
+        }
+        queue.offer(pending);
+        int queued = size.incrementAndGet();
+        if (closed && queue.remove(pending)) {
+            // 检查 closed 之后 close() 已经写完队列，这一行不会再有人写，取回来直接插入
+            size.decrementAndGet();
+            capacity.release();
+            pending.future.complete(BaseDao.saveObject(row, tableName));
+            return pending.future;
+        }
+        if (queued == 1 || queued >= maxBatch) {
+            LockSupport.unpark(flusher);
+        }
+        return pending.future;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        REGISTRY.remove(tableName, this);
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 关闭前刚进入队列、后台线程已经退出时没有写入的行
+        List<Pending> rest = new ArrayList<>();
+        Pending pending;
+        while (null != (pending = queue.poll())) {
+            rest.add(pending);
+        }
+        if (!rest.isEmpty()) {
+            size.addAndGet(-rest.size());
+            flush(rest);
+            capacity.release(rest.size());
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * 排队等待写入的行数
+     */
+    public int getPending() {
+        return size.get();
+    }
+
+    /**
+     * 执行的多行插入语句数
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * 通过多行插入写入的行数
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * 多行插入失败后逐行插入的行数
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    private void run() {
+        while (true) {
+            Pending head = queue.peek();
+            if (null == head) {
+                if (closed) {
+                    return;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            long wait = head.enqueuedAt + maxDelayNanos - System.nanoTime();
+            if (!closed && size.get() < maxBatch && wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            List<Pending> batch = new ArrayList<>(Math.min(size.get(), maxBatch));
+            Pending pending;
+            while (batch.size() < maxBatch && null != (pending = queue.poll())) {
+                batch.add(pending);
+            }
+            size.addAndGet(-batch.size());
+            try {
+                flush(batch);
+            } catch (RuntimeException e) {
+                log.error("后写缓冲写入异常: {}", ExceptionUtil.buildErrorMessage(e));
+                for (Pending failed : batch) {
+                    failed.future.complete(-1);
+                }
+            } finally {
+                capacity.release(batch.size());
+            }
+        }
+    }
+
+    /**
+     * 按非空字段分组，每块一条多行插入，失败的块逐行插入
+     */
+    private void flush(List<Pending> batch) {
+        Map<List<EntityMeta.Column>, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            List<EntityMeta.Column> shape = EntityMeta.of(pending.row.getClass()).getNonNullColumns(pending.row);
+            groups.computeIfAbsent(shape, key -> new ArrayList<>()).add(pending);
+        }
+        BatchInsertWriter writer = BatchInsertWriter.getDefault();
+        boolean written = false;
+        Connection conn = null;
+        try {
+            conn = DatasourceUtil.getInstance().getConn();
+            for (Map.Entry<List<EntityMeta.Column>, List<Pending>> group : groups.entrySet()) {
+                // 按单条语句的行数拆块，自动提交下每块单独生效，失败的块重试时不会重复插入成功的块
+                int rowsPerStatement = writer.rowsPerStatement(group.getKey().size());
+                List<Pending> pendings = group.getValue();
+                for (int from = 0; from < pendings.size(); from += rowsPerStatement) {
+                    List<Pending> part = pendings.subList(from, Math.min(from + rowsPerStatement, pendings.size()));
+                    List<Object> objects = new ArrayList<>(part.size());
+                    for (Pending pending : part) {
+                        objects.add(pending.row);
+                    }
+                    try {
+                        writer.write(conn, tableName, objects);
+                        written = true;
+                        flushes.increment();
+                        rows.add(part.size());
+                        for (Pending pending : part) {
+                            pending.future.complete(1);
+                        }
+                    } catch (SQLException e) {
+                        log.warn("{} 多行插入失败，改为逐行插入: {}", tableName, ExceptionUtil.buildErrorMessage(e));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.error("后写缓冲获取连接失败: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            DatasourceUtil.close(conn);
+        }
+        if (written) {
+            ResultCache.invalidate(tableName);
+        }
+        for (Pending pending : batch) {
+            if (!pending.future.isDone()) {
+                fallbacks.increment();
+                pending.future.complete(BaseDao.saveObject(pending.row, tableName));
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private final Object row;
+
+        private final long enqueuedAt = System.nanoTime();
+
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private Pending(Object row) {
+            this.row = row;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.xxw.base.query;
 
+import com.xxw.base.dao.SqlArray;
 import com.xxw.base.util.CollectionUtil;
 import com.xxw.base.util.SqlUtil;
 import com.xxw.base.util.StringUtils;
@@ -296,13 +297,16 @@ public class Condition {
         // 判空值
         checkValueNull();
 
-        // 固定前置，例如："name ="、"name IN"、"name BETWEEN"、"name LIKE"
+        if (isOperatorIn()) {
+            buildIn(conditionStrBuilder, paramValues);
+            return conditionStrBuilder.toString();
+        }
+
+        // 固定前置，例如："name ="、"name BETWEEN"、"name LIKE"
         conditionStrBuilder.append(this.field).append(" ").append(this.operator);
 
         if (isOperatorBetween()) {
             buildValuePartForBETWEEN(conditionStrBuilder, paramValues);
-        } else if (isOperatorIn()) {
-            // 类似：" (?,?,?)" 或者 " (1,2,3,4)"
         } else {
             if (isPlaceHolder() && false == isOperatorIs()) {
                 // 使用条件表达式占位符，条件表达式并不适用于 IS NULL
@@ -319,6 +323,27 @@ public class Condition {
         return conditionStrBuilder.toString();
     }
 
+    /**
+     * 按 {@link #toString(List)} 的规则回填占位符对应的参数值，不拼接条件字符串
+     *
+     * @param paramValues 参数列表
+     */
+    public void collectParams(List<Object> paramValues) {
+        checkValueNull();
+        if (isOperatorBetween()) {
+            if (isPlaceHolder()) {
+                paramValues.add(this.value);
+                paramValues.add(this.secondValue);
+            }
+        } else if (isOperatorIn()) {
+            if (isPlaceHolder()) {
+                paramValues.add(SqlArray.of(inValues()));
+            }
+        } else if (isPlaceHolder() && false == isOperatorIs()) {
+            paramValues.add(this.value);
+        }
+    }
+
     // ----------------------------------------------------------------------------------------------- Private method start
 
     /**
@@ -356,6 +381,70 @@ public class Condition {
     }
 
 
+    /**
+     * 构建IN语句<br>
+     * 使用占位符时生成 "name = any(?)"，所有值作为一个数组参数绑定，值的个数不影响sql文本；
+     * 否则生成 "name IN (1,2,3)"
+     *
+     * @param conditionStrBuilder 条件语句构建器
+     * @param paramValues         参数集合，用于参数占位符对应参数回填
+     */
+    private void buildIn(StringBuilder conditionStrBuilder, List<Object> paramValues) {
+        conditionStrBuilder.append(this.field);
+        if (isPlaceHolder()) {
+            conditionStrBuilder.append(" = any(?)");
+            if (null != paramValues) {
+                paramValues.add(SqlArray.of(inValues()));
+            }
+        } else if (this.value instanceof String) {
+            // 直接使用条件值，例如 "1,2,3" 或者 "'a','b'"
+            conditionStrBuilder.append(" IN (").append(unwrapParentheses(this.value.toString())).append(")");
+        } else {
+            conditionStrBuilder.append(" IN (");
+            Object[] values = inValues();
+            for (int i = 0; i < values.length; i++) {
+                conditionStrBuilder.append(i == 0 ? "" : ",");
+                if (values[i] instanceof String) {
+                    conditionStrBuilder.append("'").append(((String) values[i]).replace("'", "''")).append("'");
+                } else {
+                    conditionStrBuilder.append(values[i]);
+                }
+            }
+            conditionStrBuilder.append(")");
+        }
+    }
+
+    /**
+     * IN 的值：集合、数组，或者 "1,2,3" 形式的字符串
+     */
+    private Object[] inValues() {
+        if (this.value instanceof Collection) {
+            return ((Collection<?>) this.value).toArray();
+        }
+        if (CollectionUtil.isArray(this.value)) {
+            Object[] values = new Object[java.lang.reflect.Array.getLength(this.value)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = java.lang.reflect.Array.get(this.value, i);
+            }
+            return values;
+        }
+        String valueStr = unwrapParentheses(this.value.toString());
+        List<String> parts = StringUtils.split(valueStr, ',', -1, true, true);
+        Object[] values = new Object[parts.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = unwrapQuote(parts.get(i));
+        }
+        return values;
+    }
+
+    private static String unwrapParentheses(String value) {
+        String valueStr = value.trim();
+        if (valueStr.startsWith("(") && valueStr.endsWith(")")) {
+            valueStr = valueStr.substring(1, valueStr.length() - 1).trim();
+        }
+        return valueStr;
+    }
+
     /**
      * 解析值表达式<br>
      * 支持"<>", "<=", "< ", ">=", "> ", "= ", "!=", "IN", "LIKE", "IS", "IS NOT"表达式<br>
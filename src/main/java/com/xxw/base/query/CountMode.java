@@ -0,0 +1,24 @@
+package com.xxw.base.query;
+
+/**
+ * 分页查询时总记录数的计算方式
+ *
+ * @author ivan
+ */
+public enum CountMode {
+
+    /**
+     * 不查询总记录数，多取一行判断是否还有下一页，只需要“下一页”按钮的列表使用
+     */
+    NONE,
+
+    /**
+     * 使用数据库统计信息估算总记录数（执行计划的估算行数或者 pg_class.reltuples），不扫描数据
+     */
+    ESTIMATED,
+
+    /**
+     * select count(1) 精确计数
+     */
+    EXACT
+}
@@ -0,0 +1,121 @@
+package com.xxw.base.query;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.xxw.base.dao.EntityMeta;
+import com.xxw.base.util.StringUtils;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 键集分页的续页标记<br>
+ * 标记内容是上一页最后一行的排序字段值（按 {@link Query#getOrders()} 的顺序）序列化成的 JSON 数组，再做 URL 安全的 Base64 编码。
+ * 日期类型写成 {"t": 毫秒数}，解析时还原为 Timestamp，保证绑定参数时仍然按时间比较
+ *
+ * @author ivan
+ */
+@UtilityClass
+public class KeysetToken {
+
+    private static final String TIME_KEY = "t";
+
+    /**
+     * 编码排序字段值
+     *
+     * @param keys 排序字段值
+     * @return 续页标记
+     */
+    public String encode(Object[] keys) {
+        JSONArray array = new JSONArray(keys.length);
+        for (Object key : keys) {
+            if (key instanceof Date) {
+                JSONObject time = new JSONObject(1);
+                time.put(TIME_KEY, ((Date) key).getTime());
+                array.add(time);
+            } else {
+                array.add(key);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(array.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析续页标记
+     *
+     * @param token 续页标记
+     * @return 排序字段值，标记为空时返回null
+     * @throws IllegalArgumentException 标记格式不正确
+     */
+    public Object[] decode(String token) {
+        if (StringUtils.isEmpty(token)) {
+            return null;
+        }
+        JSONArray array;
+        try {
+            array = JSON.parseArray(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("续页标记格式不正确: " + token, e);
+        }
+        Object[] keys = new Object[array.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Object key = array.get(i);
+            if (key instanceof JSONObject && ((JSONObject) key).containsKey(TIME_KEY)) {
+                key = new Timestamp(((JSONObject) key).getLongValue(TIME_KEY));
+            }
+            keys[i] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * 读取一行数据的排序字段值，支持实体对象和 列名 -> 值 的Map
+     *
+     * @param row    一行数据
+     * @param orders 排序字段
+     * @return 排序字段值，有字段取不到值时返回null
+     */
+    public Object[] keysOf(Object row, Order[] orders) {
+        List<Object> keys = new ArrayList<>(orders.length);
+        for (Order order : orders) {
+            Object key = valueOf(row, columnName(order.getField()));
+            if (key == null) {
+                return null;
+            }
+            keys.add(key);
+        }
+        return keys.toArray();
+    }
+
+    /**
+     * 去掉表别名，例如 u.create_time -> create_time
+     */
+    public String columnName(String field) {
+        int index = field.lastIndexOf('.');
+        return index < 0 ? field.trim() : field.substring(index + 1).trim();
+    }
+
+    private Object valueOf(Object row, String name) {
+        if (row instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) row;
+            if (map.containsKey(name)) {
+                return map.get(name);
+            }
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (name.equalsIgnoreCase(String.valueOf(entry.getKey()))) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+        EntityMeta.Column column = EntityMeta.of(row.getClass()).getProperty(name);
+        return column == null ? null : column.getValue(row);
+    }
+}
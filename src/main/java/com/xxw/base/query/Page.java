@@ -56,6 +56,26 @@ public class Page<T> implements Serializable {
      */
     private List<T> data;
 
+    /**
+     * 总记录数的计算方式，默认精确计数
+     */
+    private CountMode countMode = CountMode.EXACT;
+
+    /**
+     * 是否使用键集分页：按 Query 的排序字段从上一页最后一行之后继续读取，不再使用 offset
+     */
+    private boolean keyset;
+
+    /**
+     * 键集分页：上一页最后一行的排序字段值，按 Query.orders 的顺序
+     */
+    private Object[] lastKeys;
+
+    /**
+     * 键集分页：上一页返回的 {@link PageResult#getNextToken()}，lastKeys 为空时使用
+     */
+    private String token;
+
     /**
      * 根据pageSize、pageNumber、totalRecord计算开始行、结束行和总页数
      **/
@@ -129,4 +149,29 @@ public class Page<T> implements Serializable {
         this.pageSize = pageSize;
     }
 
+    /**
+     * 键集分页，token 为空时读取第一页
+     *
+     * @param pageSize 每页的记录数
+     * @param token    上一页返回的续页标记
+     * @return Page
+     */
+    public static <T> Page<T> keyset(int pageSize, String token) {
+        Page<T> page = new Page<>();
+        page.setPageSize(pageSize);
+        page.setKeyset(true);
+        page.setToken(token);
+        return page;
+    }
+
+    /**
+     * 键集分页的起点：lastKeys 优先，其次解析 token，都没有时返回null表示第一页
+     */
+    public Object[] resolveLastKeys() {
+        if (lastKeys != null && lastKeys.length > 0) {
+            return lastKeys;
+        }
+        return KeysetToken.decode(token);
+    }
+
 }
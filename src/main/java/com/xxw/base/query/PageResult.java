@@ -50,6 +50,21 @@ public class PageResult<T> implements Serializable {
      */
     private List<T> data;
 
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+
+    /**
+     * 总记录数的计算方式，NONE 时 totalRecord、totalPage 不计算，ESTIMATED 时为估算值
+     */
+    private CountMode countMode;
+
+    /**
+     * 键集分页的续页标记，传给下一次查询的 {@link Page#setToken(String)}，没有下一页时为null
+     */
+    private String nextToken;
+
     public PageResult(int pageSize, int totalRecord) {
         setPage(pageSize, totalRecord, null);
     }
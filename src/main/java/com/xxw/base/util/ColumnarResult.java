@@ -0,0 +1,469 @@
+package com.xxw.base.util;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按列存储的查询结果，适合统计报表这类行数多、以数值为主的查询<br>
+ * 整数列存为 int[]、long[]，浮点和 numeric 列存为 double[]，字符串列做字典编码（int[] 编号 + 去重后的字符串），
+ * 其他类型按对象存储；空值用 BitSet 标记，对应位置的数值为0，求和可以直接遍历数组。
+ * 相比 List&lt;Map&gt; 不再为每个单元格装箱，也没有每行一个 Map<br>
+ * numeric/decimal 转成 double，精度要求高（金额等）的列应该在 sql 里转成 bigint 或者用 {@link DatabaseUtil#executeSearch} 查询
+ *
+ * @author ivan
+ */
+public final class ColumnarResult {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<Column> columns;
+
+    private final Map<String, Column> byName;
+
+    private final int rowCount;
+
+    private final CompactRow.Header header;
+
+    private ColumnarResult(List<Column> columns, int rowCount) {
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+        Map<String, Column> byName = new LinkedHashMap<>(columns.size() * 2);
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            names[i] = columns.get(i).name;
+            byName.put(names[i], columns.get(i));
+        }
+        this.byName = byName;
+        this.header = CompactRow.Header.of(names);
+    }
+
+    /**
+     * 读取结果集剩余的全部行
+     *
+     * @param resultSet    查询结果
+     * @param expectedRows 预计行数，用于初始化数组大小，不知道时传0
+     * @return ColumnarResult
+     * @throws SQLException 读取结果集异常
+     */
+    public static ColumnarResult read(ResultSet resultSet, int expectedRows) throws SQLException {
+        ResultSetMetaData md = resultSet.getMetaData();
+        int capacity = expectedRows > 0 ? expectedRows : INITIAL_CAPACITY;
+        List<Column> columns = new ArrayList<>(md.getColumnCount());
+        for (int i = 1; i <= md.getColumnCount(); i++) {
+            columns.add(Column.create(md.getColumnName(i), md.getColumnType(i), capacity));
+        }
+        int rows = 0;
+        while (resultSet.next()) {
+            if (rows == capacity) {
+                capacity += Math.max(capacity >> 1, 1);
+                for (Column column : columns) {
+                    column.grow(capacity);
+                }
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).read(resultSet, i + 1, rows);
+            }
+            rows++;
+        }
+        for (Column column : columns) {
+            column.finish(rows);
+        }
+        return new ColumnarResult(columns, rows);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 按列名获取列，没有时返回null
+     */
+    public Column getColumn(String name) {
+        return byName.get(name);
+    }
+
+    public IntColumn getIntColumn(String name) {
+        return column(name, IntColumn.class);
+    }
+
+    public LongColumn getLongColumn(String name) {
+        return column(name, LongColumn.class);
+    }
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return column(name, DoubleColumn.class);
+    }
+
+    public StringColumn getStringColumn(String name) {
+        return column(name, StringColumn.class);
+    }
+
+    /**
+     * 第 row 行的 列名 -> 值，值重新装箱，只适合少量行的兼容读取
+     */
+    public Map<String, Object> getRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row: " + row + ", rowCount: " + rowCount);
+        }
+        // 重名的列与 CompactRow 一样只保留最后一列
+        Object[] values = new Object[header.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = byName.get(header.getName(i)).getObject(row);
+        }
+        return CompactRow.of(header, values);
+    }
+
+    private <C extends Column> C column(String name, Class<C> type) {
+        Column column = byName.get(name);
+        if (null == column) {
+            throw new IllegalArgumentException("没有列: " + name);
+        }
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException(name + " 是 " + column.getClass().getSimpleName() + "，不是 " + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    /**
+     * 单列数据
+     */
+    public abstract static class Column {
+
+        private final String name;
+
+        private final BitSet nulls = new BitSet();
+
+        int size;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        static Column create(String name, int sqlType, int capacity) {
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    return new IntColumn(name, capacity);
+                case Types.BIGINT:
+                    return new LongColumn(name, capacity);
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                    return new DoubleColumn(name, capacity);
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.LONGVARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    return new StringColumn(name, capacity);
+                default:
+                    return new ObjectColumn(name, capacity);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        public int getNullCount() {
+            return nulls.cardinality();
+        }
+
+        /**
+         * 第 row 行的值，空值返回null
+         */
+        public abstract Object getObject(int row);
+
+        abstract void read(ResultSet resultSet, int index, int row) throws SQLException;
+
+        abstract void grow(int capacity);
+
+        /**
+         * 读取结束，数组截断为实际行数
+         */
+        void finish(int rows) {
+            size = rows;
+            grow(rows);
+        }
+
+        void markNull(int row, boolean isNull) {
+            if (isNull) {
+                nulls.set(row);
+            }
+        }
+    }
+
+    public static final class IntColumn extends Column {
+
+        private int[] values;
+
+        IntColumn(String name, int capacity) {
+            super(name);
+            values = new int[capacity];
+        }
+
+        /**
+         * 底层数组，长度等于行数，空值为0，不要修改
+         */
+        public int[] getValues() {
+            return values;
+        }
+
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        public long sum() {
+            long sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getInt(index);
+            markNull(row, resultSet.wasNull());
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (values.length != capacity) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+    }
+
+    public static final class LongColumn extends Column {
+
+        private long[] values;
+
+        LongColumn(String name, int capacity) {
+            super(name);
+            values = new long[capacity];
+        }
+
+        /**
+         * 底层数组，长度等于行数，空值为0，不要修改
+         */
+        public long[] getValues() {
+            return values;
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        public long sum() {
+            long sum = 0;
+            for (long value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getLong(index);
+            markNull(row, resultSet.wasNull());
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (values.length != capacity) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+
+        private double[] values;
+
+        DoubleColumn(String name, int capacity) {
+            super(name);
+            values = new double[capacity];
+        }
+
+        /**
+         * 底层数组，长度等于行数，空值为0，不要修改
+         */
+        public double[] getValues() {
+            return values;
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        public double sum() {
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            values[row] = resultSet.getDouble(index);
+            markNull(row, resultSet.wasNull());
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (values.length != capacity) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+    }
+
+    /**
+     * 字典编码的字符串列，相同的字符串只保存一份；按编号分组统计时不需要比较字符串
+     */
+    public static final class StringColumn extends Column {
+
+        private int[] codes;
+
+        private final List<String> dictionary = new ArrayList<>();
+
+        private Map<String, Integer> lookup = new HashMap<>();
+
+        StringColumn(String name, int capacity) {
+            super(name);
+            codes = new int[capacity];
+        }
+
+        /**
+         * 每行的字典编号，长度等于行数，空值为-1，不要修改
+         */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        /**
+         * 编号 -> 字符串
+         */
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary);
+        }
+
+        public String getString(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return getString(row);
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            String value = resultSet.getString(index);
+            if (null == value) {
+                codes[row] = -1;
+                markNull(row, true);
+                return;
+            }
+            Integer code = lookup.get(value);
+            if (null == code) {
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (codes.length != capacity) {
+                codes = Arrays.copyOf(codes, capacity);
+            }
+        }
+
+        @Override
+        void finish(int rows) {
+            super.finish(rows);
+            // 读取完不再需要反查
+            lookup = null;
+        }
+    }
+
+    /**
+     * 其他类型（日期、布尔、数组等）按对象存储
+     */
+    public static final class ObjectColumn extends Column {
+
+        private Object[] values;
+
+        ObjectColumn(String name, int capacity) {
+            super(name);
+            values = new Object[capacity];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int index, int row) throws SQLException {
+            Object value = DatabaseUtil.getResultSetValue(resultSet, index);
+            values[row] = value;
+            markNull(row, null == value);
+        }
+
+        @Override
+        void grow(int capacity) {
+            if (values.length != capacity) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.xxw.base.util;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 紧凑的只读行<br>
+ * 同一个结果集的所有行共用一个 {@link Header}（列名和列序号只解析一次），每行只保存一个 Object[]，
+ * 对外仍然是 列名 -> 值 的 Map，取代每行一个 HashMap。行是只读的，需要修改时复制一份：new HashMap&lt;&gt;(row)
+ *
+ * @author ivan
+ */
+public final class CompactRow extends AbstractMap<String, Object> {
+
+    private final Header header;
+
+    private final Object[] values;
+
+    private Set<Map.Entry<String, Object>> entrySet;
+
+    private CompactRow(Header header, Object[] values) {
+        this.header = header;
+        this.values = values;
+    }
+
+    /**
+     * 读取结果集当前行，PgArray 转换成 Java 数组
+     *
+     * @param resultSet 查询结果，游标已经指向要读取的行
+     * @param header    结果集的列信息
+     * @return CompactRow
+     * @throws SQLException 读取结果集异常
+     */
+    public static CompactRow read(ResultSet resultSet, Header header) throws SQLException {
+        int[] columns = header.columns;
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = DatabaseUtil.getResultSetValue(resultSet, columns[i]);
+        }
+        return new CompactRow(header, values);
+    }
+
+    /**
+     * 由已经读出的值组成一行
+     *
+     * @param header 列信息
+     * @param values 按 header 顺序排列的值，直接引用不复制
+     * @return CompactRow
+     */
+    public static CompactRow of(Header header, Object... values) {
+        if (values.length != header.size()) {
+            throw new IllegalArgumentException("值的个数 " + values.length + " 与列数 " + header.size() + " 不一致");
+        }
+        return new CompactRow(header, values);
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer slot = header.slots.get(key);
+        return null == slot ? null : values[slot];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return header.slots.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        Set<Map.Entry<String, Object>> set = entrySet;
+        if (null == set) {
+            entrySet = set = new EntrySet();
+        }
+        return set;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new Iterator<Map.Entry<String, Object>>() {
+
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                public Map.Entry<String, Object> next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    int i = index++;
+                    return new SimpleImmutableEntry<>(header.names[i], values[i]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * 结果集的列信息，同一个结果集的行共用<br>
+     * 重名的列只保留最后一列，与原来逐列 put 到 HashMap 的结果一致
+     */
+    public static final class Header {
+
+        /**
+         * 第 i 个值的列名
+         */
+        private final String[] names;
+
+        /**
+         * 第 i 个值在结果集里的列序号（从1开始）
+         */
+        private final int[] columns;
+
+        /**
+         * 列名 -> 值的下标
+         */
+        private final Map<String, Integer> slots;
+
+        private Header(String[] labels) {
+            Map<String, Integer> last = new HashMap<>(labels.length * 2);
+            for (int i = 0; i < labels.length; i++) {
+                last.put(labels[i], i);
+            }
+            this.names = new String[last.size()];
+            this.columns = new int[last.size()];
+            Map<String, Integer> slots = new HashMap<>(last.size() * 2);
+            int slot = 0;
+            for (int i = 0; i < labels.length; i++) {
+                if (last.get(labels[i]) == i) {
+                    names[slot] = labels[i];
+                    columns[slot] = i + 1;
+                    slots.put(labels[i], slot++);
+                }
+            }
+            this.slots = Collections.unmodifiableMap(slots);
+        }
+
+        public static Header of(ResultSetMetaData md) throws SQLException {
+            int columnCount = md.getColumnCount();
+            String[] labels = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                labels[i] = md.getColumnName(i + 1);
+            }
+            return new Header(labels);
+        }
+
+        public static Header of(String... labels) {
+            return new Header(labels.clone());
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int slot) {
+            return names[slot];
+        }
+    }
+}
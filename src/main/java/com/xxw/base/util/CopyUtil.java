@@ -0,0 +1,146 @@
+package com.xxw.base.util;
+
+import com.xxw.base.dao.EntityMeta;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * PostgreSQL COPY 批量导入工具类<br>
+ * 使用 COPY ... FROM STDIN 的 text 格式把实体集合按行写入数据库，
+ * 数据按块写出，不会在驱动里堆积一个巨大的 JDBC batch
+ *
+ * @author ivan
+ */
+@Slf4j
+@UtilityClass
+public class CopyUtil {
+
+    /**
+     * 每次写给数据库的缓冲区大小（字符数）
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String NULL_VALUE = "\\N";
+
+    private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * 通过 COPY 批量插入，插入的字段以第一个对象中值不为null的字段为准，与 insertBatch 保持一致
+     *
+     * @param conn      数据库连接，必须是 PostgreSQL 连接或者连接池对它的包装
+     * @param tableName 表名
+     * @param objects   实体对象集合
+     * @return 导入的行数
+     * @throws SQLException COPY 执行异常
+     */
+    public long copyIn(Connection conn, String tableName, List<?> objects) throws SQLException {
+        if (CollectionUtil.isEmpty(objects)) {
+            return 0;
+        }
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        List<EntityMeta.Column> columns = meta.getNonNullColumns(objects.get(0));
+
+        CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+        CopyIn copyIn = copyManager.copyIn(generateCopySql(tableName, columns));
+        try {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(TIMESTAMP_PATTERN);
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+            for (Object object : objects) {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) {
+                        buffer.append('\t');
+                    }
+                    appendValue(buffer, columns.get(i).getValue(object), dateFormat);
+                }
+                buffer.append('\n');
+                if (buffer.length() >= BUFFER_SIZE) {
+                    write(copyIn, buffer);
+                }
+            }
+            if (buffer.length() > 0) {
+                write(copyIn, buffer);
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * 生成 COPY 语句，例如：copy tbl_user (id,name) from stdin
+     *
+     * @param tableName 表名
+     * @param columns   字段
+     * @return COPY 语句
+     */
+    public String generateCopySql(String tableName, List<EntityMeta.Column> columns) {
+        StringBuilder builder = new StringBuilder("copy ").append(tableName).append(" (");
+        for (EntityMeta.Column column : columns) {
+            builder.append(column.getName()).append(",");
+        }
+        builder.deleteCharAt(builder.length() - 1);
+        builder.append(") from stdin");
+        return builder.toString();
+    }
+
+    private void write(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * 按 COPY text 格式写入一个字段值：null 写成 \N，反斜杠、制表符、换行、回车需要转义
+     */
+    void appendValue(StringBuilder buffer, Object value, SimpleDateFormat dateFormat) {
+        if (value == null) {
+            buffer.append(NULL_VALUE);
+            return;
+        }
+        if (value instanceof Boolean) {
+            buffer.append((Boolean) value ? 't' : 'f');
+            return;
+        }
+        if (value instanceof BigDecimal) {
+            buffer.append(((BigDecimal) value).toPlainString());
+            return;
+        }
+        if (value instanceof Number) {
+            buffer.append(value);
+            return;
+        }
+        String text = value instanceof Date ? dateFormat.format((Date) value) : value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    buffer.append("\\\\");
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                default:
+                    buffer.append(c);
+            }
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package com.xxw.base.util;
 
 import com.alibaba.fastjson.JSONArray;
+import com.xxw.base.dao.CursorIterator;
+import com.xxw.base.dao.EntityRowMapper;
+import com.xxw.base.dao.SqlArray;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import org.postgresql.jdbc.PgArray;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,13 +18,18 @@ import java.util.Map;
  * @author: ivan
  * @className: DatabaseUtil
  * @packageName: com.sutpc.base.util
- * @description: 数据操作工具类
+ * @description: 数据操作工具类，每次执行的耗时、行数记录到 {@link SqlMetrics}
  * @data: 2020-02-28 12:20
  */
 @Slf4j
 @UtilityClass
 public class DatabaseUtil {
 
+    /**
+     * executeBatchSql 每累计多少条参数执行一次 executeBatch
+     */
+    private static final int BATCH_FLUSH_SIZE = 1000;
+
     private static class SingletonHolder {
         private static final DatabaseUtil INSTANCE = new DatabaseUtil();
     }
@@ -43,71 +50,163 @@ public class DatabaseUtil {
         PreparedStatement state = null;
         ResultSet object = null;
         List<Map> result = null;
+        long start = System.nanoTime();
         try {
             state = conn.prepareStatement(sql);
-            if (params != null && params.length > 0) {
-                for (int i = 0; i < params.length; i++) {
-                    state.setObject(i + 1, params[i]);
-                }
-            }
+            setParameters(state, params);
+            SqlMetrics.recordPrepare(sql, state);
             object = state.executeQuery();
             if (object != null) {
                 result = new ArrayList<>();
-                ResultSetMetaData md = object.getMetaData();
-                int columnCount = md.getColumnCount();
+                // 列信息整个结果集只解析一次，每行只有一个 Object[]
+                CompactRow.Header header = CompactRow.Header.of(object.getMetaData());
                 while (object.next()) {
-                    Map<String, Object> rowData = new HashMap<>();
-                    for (int i = 1; i <= columnCount; i++) {
-                        Object value = object.getObject(i);
-                        if(value instanceof PgArray) {
-                            PgArray pgArrayValue =  (PgArray)value;
-                            Object array = pgArrayValue.getArray();
-                            rowData.put(md.getColumnName(i), array);
-                        } else {
-                            rowData.put(md.getColumnName(i), value);
-                        }
-
-                    }
-                    result.add(rowData);
+                    result.add(CompactRow.read(object, header));
                 }
             }
         } catch (Exception e) {
             log.error("executeSearch异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
-            DatasourceUtil.close(null, state, object);
+            SqlMetrics.record(sql, params, start, null == result ? -1 : result.size(), null == result);
+            DatasourceUtil.close(object);
+            DatasourceUtil.close(state);
         }
         return result;
     }
 
     /**
+     * 执行带参数的查询，结果按列存储为 {@link ColumnarResult}<br>
+     * 自动提交的连接在查询期间临时关闭自动提交，驱动才会按 fetchSize 分批拉取，不会先把整个结果集缓存成行
+     *
+     * @param conn
+     * @param sql
+     * @param params
+     * @param fetchSize 每次从数据库拉取的行数，小于等于0时使用 {@link CursorIterator#DEFAULT_FETCH_SIZE}
+     * @return 查询失败时返回null
+     */
+    public static ColumnarResult executeColumnarSearch(Connection conn, String sql, Object[] params, int fetchSize) {
+        PreparedStatement state = null;
+        ResultSet resultSet = null;
+        ColumnarResult result = null;
+        boolean autoCommit = false;
+        long start = System.nanoTime();
+        try {
+            autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            state = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            state.setFetchSize(fetchSize > 0 ? fetchSize : CursorIterator.DEFAULT_FETCH_SIZE);
+            setParameters(state, params);
+            SqlMetrics.recordPrepare(sql, state);
+            resultSet = state.executeQuery();
+            result = ColumnarResult.read(resultSet, 0);
+        } catch (Exception e) {
+            log.error("executeColumnarSearch异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            SqlMetrics.record(sql, params, start, null == result ? -1 : result.getRowCount(), null == result);
+            DatasourceUtil.close(null, state, resultSet);
+            if (autoCommit) {
+                try {
+                    conn.commit();
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    log.error("恢复自动提交失败: {}", ExceptionUtil.buildErrorMessage(e));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按顺序绑定参数，{@link SqlArray} 绑定为数据库数组
+     *
+     * @param state
+     * @param params
+     * @throws SQLException
+     */
+    public static void setParameters(PreparedStatement state, Object[] params) throws SQLException {
+        if (params != null && params.length > 0) {
+            for (int i = 0; i < params.length; i++) {
+                setParameter(state, i + 1, params[i]);
+            }
+        }
+    }
+
+    /**
+     * 绑定单个参数，{@link SqlArray} 绑定为数据库数组
+     *
+     * @param state
+     * @param index
+     * @param value
+     * @throws SQLException
+     */
+    public static void setParameter(PreparedStatement state, int index, Object value) throws SQLException {
+        if (value instanceof SqlArray) {
+            state.setArray(index, ((SqlArray) value).toArray(state.getConnection()));
+        } else {
+            state.setObject(index, value);
+        }
+    }
+
+    /**
+     * 读取结果集当前行，PgArray 转换成 Java 数组；返回只读的 {@link CompactRow}，
+     * 读取多行时应该用 {@link CompactRow#read(ResultSet, CompactRow.Header)} 共用列信息
+     *
+     * @param resultSet
+     * @param md
+     * @return
+     * @throws SQLException
+     */
+    public static Map<String, Object> readRow(ResultSet resultSet, ResultSetMetaData md) throws SQLException {
+        return CompactRow.read(resultSet, CompactRow.Header.of(md));
+    }
+
+    /**
+     * 读取结果集当前行第index列的值，PgArray 转换成 Java 数组
+     *
+     * @param resultSet
+     * @param index
+     * @return
+     * @throws SQLException
+     */
+    public static Object getResultSetValue(ResultSet resultSet, int index) throws SQLException {
+        Object value = resultSet.getObject(index);
+        if (value instanceof PgArray) {
+            return ((PgArray) value).getArray();
+        }
+        return value;
+    }
+
+    /**
+     * 执行带参数的查询方法，结果集直接映射为实体集合
+     *
      * @param conn
      * @param sql
      * @param params
      * @param clazz
      * @param <T>
      * @return
-     * @deprecated
      */
     public static <T> List<T> executeSearch(Connection conn, String sql, Object[] params, Class<T> clazz) {
         PreparedStatement state = null;
         ResultSet resultSet = null;
         List<T> result = null;
+        long start = System.nanoTime();
         try {
             state = conn.prepareStatement(sql);
-            if (params != null && params.length > 0) {
-                for (int i = 0; i < params.length; i++) {
-                    state.setObject(i + 1, params[i]);
-                }
-
-            }
+            setParameters(state, params);
+            SqlMetrics.recordPrepare(sql, state);
             resultSet = state.executeQuery();
             if (null != resultSet) {
-                result = JavaBeanUtil.resultSetToList(clazz, resultSet);
+                result = EntityRowMapper.of(clazz).mapRows(resultSet);
             }
         } catch (Exception e) {
             log.error("executeSearch异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
-            DatasourceUtil.close(null, state, resultSet);
+            SqlMetrics.record(sql, params, start, null == result ? -1 : result.size(), null == result);
+            DatasourceUtil.close(resultSet);
+            DatasourceUtil.close(state);
         }
         return result;
     }
@@ -124,20 +223,22 @@ public class DatabaseUtil {
         PreparedStatement state = null;
         ResultSet resultSet = null;
         int object = -1;
+        boolean failed = true;
+        long start = System.nanoTime();
         try {
             state = conn.prepareStatement(sql);
-            if (args != null && args.length > 0) {
-                for (int i = 0; i < args.length; i++) {
-                    state.setObject(i + 1, args[i]);
-                }
-            }
+            setParameters(state, args);
+            SqlMetrics.recordPrepare(sql, state);
             resultSet = state.executeQuery();
             resultSet.next();
             object = resultSet.getInt(1);
+            failed = false;
         } catch (Exception e) {
             log.error("executeQueryByIntSql异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
-            DatasourceUtil.close(null, state, resultSet);
+            SqlMetrics.record(sql, args, start, failed ? -1 : 1, failed);
+            DatasourceUtil.close(resultSet);
+            DatasourceUtil.close(state);
         }
         return object;
 
@@ -153,10 +254,13 @@ public class DatabaseUtil {
      */
     public static int executeSql(Connection conn, String sql, Object[] params) {
 
-        log.debug("sql---->{} params----{}", sql, JsonUtil.objectToJson(params));
+        if (log.isDebugEnabled()) {
+            log.debug("sql---->{} params----{}", sql, JsonUtil.objectToJson(params));
+        }
 
         PreparedStatement state = null;
         int object = -1;
+        long start = System.nanoTime();
         try {
             state = conn.prepareStatement(sql);
             if (null != params && params.length > 0) {
@@ -186,14 +290,16 @@ public class DatabaseUtil {
                         }
                         state.setObject(i + 1, sqlArray);
                     } else {
-                        state.setObject(i + 1, parameter);
+                        setParameter(state, i + 1, parameter);
                     }
                 }
             }
+            SqlMetrics.recordPrepare(sql, state);
             object = state.executeUpdate();
         } catch (SQLException e) {
             log.error("executeSql异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
+            SqlMetrics.record(sql, params, start, object, object < 0);
             DatasourceUtil.close(state);
         }
         return object;
@@ -213,7 +319,8 @@ public class DatabaseUtil {
 
 
     /**
-     * 批量执行添加、修改的方法
+     * 批量执行添加、修改的方法<br>
+     * 参数超过 {@link #BATCH_FLUSH_SIZE} 时分多次 executeBatch，连接是自动提交时这几次在一个事务里执行，失败时整体回滚
      *
      * @param conn
      * @param sql
@@ -222,25 +329,56 @@ public class DatabaseUtil {
      */
     public static int executeBatchSql(Connection conn, String sql, List<Object[]> params) {
         PreparedStatement state = null;
-        int[] object;
+        int count = 0;
+        boolean failed = true;
+        boolean transaction = false;
+        long start = System.nanoTime();
         try {
+            transaction = null != params && params.size() > BATCH_FLUSH_SIZE && conn.getAutoCommit();
+            if (transaction) {
+                conn.setAutoCommit(false);
+            }
             state = conn.prepareStatement(sql);
             if (params != null && params.size() != 0) {
+                int pending = 0;
                 for (Object[] objects : params) {
-                    for (int i = 0; i < objects.length; i++) {
-                        state.setObject(i + 1, objects[i]);
-                    }
+                    setParameters(state, objects);
                     state.addBatch();
+                    // 分块提交，避免在驱动里堆积一个巨大的batch
+                    if (++pending == BATCH_FLUSH_SIZE) {
+                        SqlMetrics.recordPrepare(sql, state);
+                        count += state.executeBatch().length;
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    SqlMetrics.recordPrepare(sql, state);
+                    count += state.executeBatch().length;
                 }
             }
-            object = state.executeBatch();
+            if (transaction) {
+                conn.commit();
+            }
+            failed = false;
         } catch (Exception e) {
             log.error(ExceptionUtil.buildErrorMessage(e));
             return -1;
         } finally {
+            // 批量参数可能很多，慢查询日志里不输出参数
+            SqlMetrics.record(sql, null, start, count, failed);
             DatasourceUtil.close(state);
+            if (transaction) {
+                try {
+                    if (failed) {
+                        conn.rollback();
+                    }
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    log.error("executeBatchSql事务回滚错误: {}", ExceptionUtil.buildErrorMessage(e));
+                }
+            }
         }
-        return object.length;
+        return count;
 
     }
 
@@ -253,22 +391,24 @@ public class DatabaseUtil {
      * @return
      */
     public static int executeBatchSqlByTransaction(Connection conn, String sql, List<Object[]> params) {
-        PreparedStatement state;
+        PreparedStatement state = null;
         int[] object = {};
+        boolean failed = true;
+        long start = System.nanoTime();
         try {
             // 关闭自动提交，即开启事务
             conn.setAutoCommit(false);
             state = conn.prepareStatement(sql);
             if (params != null && params.size() != 0) {
                 for (Object[] objects : params) {
-                    for (int i = 0; i < objects.length; i++) {
-                        state.setObject(i + 1, objects[i]);
-                    }
+                    setParameters(state, objects);
                     state.addBatch();
                 }
             }
+            SqlMetrics.recordPrepare(sql, state);
             object = state.executeBatch();
             conn.commit();
+            failed = false;
         } catch (Exception e) {
             try {
                 if (conn != null) {
@@ -279,6 +419,7 @@ public class DatabaseUtil {
             }
             log.error("executeBatchSqlByTransaction异常: {}", ExceptionUtil.buildErrorMessage(e));
         } finally {
+            SqlMetrics.record(sql, null, start, object.length, failed);
             try {
                 if (conn != null) {
                     conn.setAutoCommit(true);
@@ -286,40 +427,11 @@ public class DatabaseUtil {
             } catch (SQLException e) {
                 log.error(ExceptionUtil.buildErrorMessage(e));
             }
+            DatasourceUtil.close(state);
             DatasourceUtil.close(conn);
         }
         return object.length;
 
     }
 
-    /**
-     * 批量删除的方法
-     *
-     * @param conn
-     * @param sql
-     * @param params
-     * @return
-     */
-    public static int executeBatchDelete(Connection conn, String sql, List<?> params) {
-        PreparedStatement state = null;
-        int[] object;
-        try {
-            state = conn.prepareStatement(sql);
-            if (params != null && params.size() != 0) {
-                for (int i = 0; i < params.size(); i++) {
-                    state.setObject(i + 1, params.get(i));
-                }
-                state.addBatch();
-            }
-            object = state.executeBatch();
-        } catch (Exception e) {
-            log.error("executeBatchDelete异常: {}", ExceptionUtil.buildErrorMessage(e));
-            return -1;
-        } finally {
-            DatasourceUtil.close(state);
-
-        }
-        return null != object && object.length > 0 ? object[0] : 0;
-    }
-
 }
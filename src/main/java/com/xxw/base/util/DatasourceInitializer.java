@@ -0,0 +1,100 @@
+package com.xxw.base.util;
+
+import com.xxw.base.dao.DaoExecutor;
+import com.xxw.base.dao.WriteBehindInserter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把 Spring 管理的连接池注册到 {@link DatasourceUtil}，BaseDao 与 JPA 共用同一个连接池；
+ * 应用启动完成后按连接池的最小空闲连接数预热，可以通过 dao.datasource.warm-up=false 关闭<br>
+ * dao.datasource.replicas 配置只读副本的 jdbc url（逗号分隔），副本连接池复制主库 Hikari 的其他配置；
+ * dao.datasource.replica-strategy 可选 ROUND_ROBIN（默认）、LEAST_LOADED；
+ * 注册后 {@link DaoExecutor} 的线程数调整为主库连接池的最大连接数，同时把 {@link SqlMetrics} 注册到 JMX
+ *
+ * @author ivan
+ */
+@Slf4j
+@Component
+public class DatasourceInitializer implements InitializingBean, DisposableBean, ApplicationListener<ApplicationReadyEvent> {
+
+    private final ObjectProvider<DataSource> dataSource;
+
+    @Value("${dao.datasource.warm-up:true}")
+    private boolean warmUp;
+
+    @Value("${dao.datasource.replicas:}")
+    private String[] replicaUrls;
+
+    @Value("${dao.datasource.replica-strategy:ROUND_ROBIN}")
+    private DatasourceUtil.ReplicaStrategy replicaStrategy;
+
+    private final List<HikariDataSource> replicas = new ArrayList<>();
+
+    public DatasourceInitializer(ObjectProvider<DataSource> dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        SqlMetrics.registerMBean();
+        DataSource managed = dataSource.getIfUnique();
+        if (null == managed) {
+            log.info("没有唯一的 Spring 数据源，BaseDao 使用 /datasource.properties 配置的连接池");
+            return;
+        }
+        DatasourceUtil.getInstance().use(managed);
+        DaoExecutor.sizeToPool(DatasourceUtil.getInstance().getMaximumPoolSize());
+        if (null != replicaUrls && replicaUrls.length > 0) {
+            if (!(managed instanceof HikariDataSource)) {
+                log.warn("主库不是 Hikari 连接池，忽略只读副本配置");
+                return;
+            }
+            for (int i = 0; i < replicaUrls.length; i++) {
+                if (StringUtils.isNotEmpty(replicaUrls[i].trim())) {
+                    HikariConfig config = new HikariConfig();
+                    ((HikariDataSource) managed).copyStateTo(config);
+                    config.setJdbcUrl(replicaUrls[i].trim());
+                    config.setPoolName("replica-" + i);
+                    config.setReadOnly(true);
+                    DatasourceUtil.applyStatementCache(config.getDataSourceProperties());
+                    replicas.add(new HikariDataSource(config));
+                }
+            }
+            DatasourceUtil.getInstance().useReplicas(new ArrayList<>(replicas), replicaStrategy);
+            log.info("只读副本 {} 个，选择策略 {}", replicas.size(), replicaStrategy);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        WriteBehindInserter.closeAll();
+        DatasourceUtil.getInstance().useReplicas(null, null);
+        for (HikariDataSource replica : replicas) {
+            replica.close();
+        }
+        replicas.clear();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (warmUp) {
+            DatasourceUtil.getInstance().warmUp(0);
+            for (HikariDataSource replica : replicas) {
+                DatasourceUtil.warmUp(replica, replica.getMinimumIdle());
+            }
+        }
+    }
+}
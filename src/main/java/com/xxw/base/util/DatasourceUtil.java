@@ -1,7 +1,8 @@
 package com.xxw.base.util;
 
+import com.xxw.base.dao.DaoTransaction;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tomcat.jdbc.pool.DataSource;
 import org.apache.tomcat.jdbc.pool.DataSourceFactory;
 import org.apache.tomcat.jdbc.pool.PoolConfiguration;
 
@@ -11,23 +12,84 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.sql.DataSource;
+
+/**
+ * 数据源工具类<br>
+ * 优先使用 Spring 管理的连接池（application.yml 里配置的 Hikari，由 {@link DatasourceInitializer} 注册），
+ * 没有注册时才按 /datasource.properties 创建 tomcat-jdbc 连接池，保证整个应用只有一个连接池；
+ * 同时提供连接池的活跃、空闲、等待线程数以及获取连接耗时的统计<br>
+ * 配置了只读副本时，{@link #getReadConn()} 把读请求分发到副本（轮询或选择活跃连接最少的），写请求始终走主库；
+ * 在 {@link #usePrimary()} 范围内（例如事务里需要读到自己刚写的数据）读请求也走主库<br>
+ * 在 {@link DaoTransaction} 范围内读写都使用事务绑定的连接<br>
+ * 所有连接池都按 {@link #applyStatementCache} 设置 PostgreSQL 驱动的预编译语句缓存，命中率见 {@link SqlMetrics}
+ */
 @Slf4j
 public class DatasourceUtil {
 
-    private DataSource dataSource;
+    /**
+     * 同一条sql在一个连接上执行多少次后改用服务端预编译语句
+     */
+    public static final int PREPARE_THRESHOLD = 5;
+
+    /**
+     * 驱动按连接缓存的sql条数，与 {@link SqlMetrics#MAX_TEMPLATES} 一致；
+     * 驱动默认只有256条，模板多于256时语句会被挤出缓存，重新计数、重新解析
+     */
+    public static final int STATEMENT_CACHE_QUERIES = SqlMetrics.MAX_TEMPLATES;
+
+    /**
+     * 驱动按连接缓存的预编译语句最多占用的内存（MiB），驱动默认5
+     */
+    public static final int STATEMENT_CACHE_SIZE_MIB = 16;
+
+    private volatile DataSource dataSource;
+
+    /**
+     * 是否是自己创建的连接池，只关闭自己创建的
+     */
+    private volatile boolean owned;
+
+    /**
+     * 获取连接的耗时
+     */
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+
+    /**
+     * 只读副本
+     */
+    private volatile List<DataSource> replicas = Collections.emptyList();
+
+    private volatile ReplicaStrategy replicaStrategy = ReplicaStrategy.ROUND_ROBIN;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * 当前线程强制读主库的嵌套层数
+     */
+    private static final ThreadLocal<int[]> PRIMARY_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 副本选择策略
+     */
+    public enum ReplicaStrategy {
+        /**
+         * 轮询
+         */
+        ROUND_ROBIN,
+        /**
+         * 活跃连接最少，连接池不支持统计时退化为轮询
+         */
+        LEAST_LOADED
+    }
 
     public DatasourceUtil() {
-        Properties properties = new Properties();
-        InputStream inputStream = this.getClass().getResourceAsStream("/datasource.properties");
-        try {
-            properties.load(inputStream);
-        } catch (IOException e) {
-            log.error(ExceptionUtil.buildErrorMessage(e));
-        }
-        PoolConfiguration poolConfiguration = DataSourceFactory.parsePoolProperties(properties);
-        dataSource = new DataSource(poolConfiguration);
     }
 
     private static class SingletonHolder {
@@ -38,18 +100,312 @@ public class DatasourceUtil {
         return SingletonHolder.INSTANCE;
     }
 
+    /**
+     * 使用外部管理的连接池，之前自己创建的连接池会被关闭
+     *
+     * @param dataSource 连接池
+     */
+    public synchronized void use(DataSource dataSource) {
+        DataSource previous = this.dataSource;
+        boolean previousOwned = this.owned;
+        this.dataSource = dataSource;
+        this.owned = false;
+        if (previousOwned && previous != dataSource) {
+            closePool(previous);
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
-        dataSource.close();
+        if (owned) {
+            closePool(dataSource);
+        }
         super.finalize();
     }
 
     public DataSource getDataSource() {
-        return dataSource;
+        DataSource current = dataSource;
+        if (null == current) {
+            synchronized (this) {
+                if (null == dataSource) {
+                    dataSource = createTomcatPool();
+                    owned = true;
+                }
+                current = dataSource;
+            }
+        }
+        return current;
     }
 
+    /**
+     * 获取连接，当前线程在 {@link DaoTransaction} 范围内时返回事务的连接
+     */
     public Connection getConn() throws SQLException {
-        return dataSource.getConnection();
+        Connection bound = DaoTransaction.currentConnection();
+        if (null != bound) {
+            return bound;
+        }
+        DataSource current = getDataSource();
+        long start = System.nanoTime();
+        try {
+            return current.getConnection();
+        } finally {
+            acquireTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 获取只读连接：没有副本或者当前线程在 {@link #usePrimary()} 范围内时返回主库连接，副本获取连接失败时也退回主库；
+     * 在 {@link DaoTransaction} 范围内返回事务的连接，能读到事务里还没提交的数据
+     */
+    public Connection getReadConn() throws SQLException {
+        List<DataSource> current = replicas;
+        if (current.isEmpty() || PRIMARY_DEPTH.get()[0] > 0 || DaoTransaction.isActive()) {
+            return getConn();
+        }
+        DataSource replica = chooseReplica(current);
+        long start = System.nanoTime();
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            log.warn("获取只读副本连接失败，改用主库: {}", ExceptionUtil.buildErrorMessage(e));
+            return getConn();
+        } finally {
+            acquireTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 设置只读副本，之前的副本连接池由调用方负责关闭
+     *
+     * @param replicas 副本连接池
+     * @param strategy 副本选择策略
+     */
+    public void useReplicas(List<DataSource> replicas, ReplicaStrategy strategy) {
+        this.replicas = null == replicas ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.replicaStrategy = null == strategy ? ReplicaStrategy.ROUND_ROBIN : strategy;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * 在返回对象关闭之前，当前线程的读请求都走主库，可以嵌套使用：
+     * <pre>
+     * try (DatasourceUtil.PrimaryScope ignored = DatasourceUtil.usePrimary()) {
+     *     BaseDao.saveObject(user);
+     *     BaseDao.search(...);
+     * }
+     * </pre>
+     */
+    public static PrimaryScope usePrimary() {
+        PRIMARY_DEPTH.get()[0]++;
+        return new PrimaryScope();
+    }
+
+    /**
+     * 当前线程的读请求是否强制走主库
+     */
+    public static boolean isPrimaryForced() {
+        return PRIMARY_DEPTH.get()[0] > 0;
+    }
+
+    /**
+     * 强制读主库的范围，关闭时恢复
+     */
+    public static final class PrimaryScope implements AutoCloseable {
+
+        private boolean closed;
+
+        private PrimaryScope() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                int[] depth = PRIMARY_DEPTH.get();
+                if (--depth[0] <= 0) {
+                    PRIMARY_DEPTH.remove();
+                }
+            }
+        }
+    }
+
+    private DataSource chooseReplica(List<DataSource> current) {
+        int start = Math.floorMod(nextReplica.getAndIncrement(), current.size());
+        if (replicaStrategy != ReplicaStrategy.LEAST_LOADED) {
+            return current.get(start);
+        }
+        DataSource chosen = current.get(start);
+        int least = activeConnections(chosen);
+        for (int i = 1; i < current.size() && least > 0; i++) {
+            DataSource candidate = current.get((start + i) % current.size());
+            int active = activeConnections(candidate);
+            if (active >= 0 && active < least) {
+                chosen = candidate;
+                least = active;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * 预热连接池：同时借出 count 个连接再归还，让连接在第一个请求到来之前建好
+     *
+     * @param count 预热的连接数，小于等于0时使用连接池配置的最小空闲连接数
+     * @return 成功建立的连接数
+     */
+    public int warmUp(int count) {
+        int target = count > 0 ? count : getMinimumIdle();
+        int warmed = warmUp(getDataSource(), target);
+        log.info("预热连接池完成: {}/{}", warmed, target);
+        return warmed;
+    }
+
+    /**
+     * 预热指定的连接池，例如只读副本
+     *
+     * @param dataSource 连接池
+     * @param count      预热的连接数
+     * @return 成功建立的连接数
+     */
+    public static int warmUp(DataSource dataSource, int count) {
+        List<Connection> connections = new ArrayList<>(Math.max(count, 0));
+        try {
+            for (int i = 0; i < count; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            log.error("预热连接池异常: {}", ExceptionUtil.buildErrorMessage(e));
+        } finally {
+            for (Connection conn : connections) {
+                close(conn);
+            }
+        }
+        return connections.size();
+    }
+
+    /**
+     * 正在使用的连接数，不支持的连接池返回-1
+     */
+    public int getActiveConnections() {
+        return activeConnections(dataSource);
+    }
+
+    /**
+     * 空闲连接数，不支持的连接池返回-1
+     */
+    public int getIdleConnections() {
+        return idleConnections(dataSource);
+    }
+
+    /**
+     * 等待获取连接的线程数，不支持的连接池返回-1
+     */
+    public int getPendingThreads() {
+        return pendingThreads(dataSource);
+    }
+
+    /**
+     * 连接池的最大连接数，不支持的连接池返回-1
+     */
+    public int getMaximumPoolSize() {
+        DataSource current = getDataSource();
+        if (current instanceof HikariDataSource) {
+            return ((HikariDataSource) current).getMaximumPoolSize();
+        }
+        if (current instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            return ((org.apache.tomcat.jdbc.pool.DataSource) current).getMaxActive();
+        }
+        return -1;
+    }
+
+    /**
+     * 获取连接耗时的直方图
+     */
+    public LatencyHistogram getAcquireTime() {
+        return acquireTime;
+    }
+
+    private static int activeConnections(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource && null != ((HikariDataSource) dataSource).getHikariPoolMXBean()) {
+            return ((HikariDataSource) dataSource).getHikariPoolMXBean().getActiveConnections();
+        }
+        if (dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            return ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).getActive();
+        }
+        return -1;
+    }
+
+    private static int idleConnections(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource && null != ((HikariDataSource) dataSource).getHikariPoolMXBean()) {
+            return ((HikariDataSource) dataSource).getHikariPoolMXBean().getIdleConnections();
+        }
+        if (dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            return ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).getIdle();
+        }
+        return -1;
+    }
+
+    private static int pendingThreads(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource && null != ((HikariDataSource) dataSource).getHikariPoolMXBean()) {
+            return ((HikariDataSource) dataSource).getHikariPoolMXBean().getThreadsAwaitingConnection();
+        }
+        if (dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            return ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).getWaitCount();
+        }
+        return -1;
+    }
+
+    private int getMinimumIdle() {
+        DataSource current = getDataSource();
+        if (current instanceof HikariDataSource) {
+            return ((HikariDataSource) current).getMinimumIdle();
+        }
+        if (current instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            org.apache.tomcat.jdbc.pool.DataSource tomcat = (org.apache.tomcat.jdbc.pool.DataSource) current;
+            return Math.max(tomcat.getMinIdle(), tomcat.getInitialSize());
+        }
+        return 0;
+    }
+
+    /**
+     * 设置驱动的预编译语句缓存，配置里已经设置的值不覆盖
+     *
+     * @param driverProperties 传给驱动的连接属性
+     */
+    public static void applyStatementCache(Properties driverProperties) {
+        driverProperties.putIfAbsent("prepareThreshold", String.valueOf(PREPARE_THRESHOLD));
+        driverProperties.putIfAbsent("preparedStatementCacheQueries", String.valueOf(STATEMENT_CACHE_QUERIES));
+        driverProperties.putIfAbsent("preparedStatementCacheSizeMiB", String.valueOf(STATEMENT_CACHE_SIZE_MIB));
+    }
+
+    private DataSource createTomcatPool() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = this.getClass().getResourceAsStream("/datasource.properties")) {
+            if (null == inputStream) {
+                throw new IllegalStateException("没有注册数据源，也没有找到 /datasource.properties");
+            }
+            properties.load(inputStream);
+        } catch (IOException e) {
+            log.error(ExceptionUtil.buildErrorMessage(e));
+        }
+        PoolConfiguration poolConfiguration = DataSourceFactory.parsePoolProperties(properties);
+        if (null == poolConfiguration.getDbProperties()) {
+            poolConfiguration.setDbProperties(new Properties());
+        }
+        applyStatementCache(poolConfiguration.getDbProperties());
+        return new org.apache.tomcat.jdbc.pool.DataSource(poolConfiguration);
+    }
+
+    private static void closePool(DataSource dataSource) {
+        if (dataSource instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+            ((org.apache.tomcat.jdbc.pool.DataSource) dataSource).close();
+        } else if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
     }
 
     public static void close(Connection conn, Statement st, ResultSet rs) {
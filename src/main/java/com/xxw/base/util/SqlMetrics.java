@@ -0,0 +1,383 @@
+package com.xxw.base.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGStatement;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按sql模板统计执行耗时、行数和失败次数<br>
+ * sql文本由 {@link SqlTemplateCache} 生成，同一种查询的文本相同、值都是绑定参数，可以直接作为模板；
+ * 模板数超过 {@link #MAX_TEMPLATES} 后新出现的sql合并到 {@link #OTHER}。
+ * 耗时超过 -Ddao.sql.slow-threshold（毫秒，默认1000，小于等于0关闭）时以 warn 级别记录sql和参数<br>
+ * {@link #recordPrepare} 统计每个模板有多少次执行用上了驱动按连接缓存的服务端预编译语句（prepareThreshold、
+ * preparedStatementCacheQueries 见 {@link DatasourceUtil}），命中率低说明缓存太小或者sql文本不稳定<br>
+ * {@link #registerMBean()} 把统计注册到 JMX（com.xxw.base:type=SqlMetrics），可以用 jconsole 等工具查看
+ *
+ * @author ivan
+ */
+@Slf4j
+public final class SqlMetrics {
+
+    public static final int MAX_TEMPLATES = 1024;
+
+    public static final String OTHER = "<other>";
+
+    public static final String OBJECT_NAME = "com.xxw.base:type=SqlMetrics";
+
+    /**
+     * 慢查询日志里单个参数、整个sql最多输出的字符数
+     */
+    private static final int MAX_RENDER_LENGTH = 200;
+
+    private static final int MAX_SQL_LENGTH = 2000;
+
+    private static final Map<String, Stats> STATS = new ConcurrentHashMap<>();
+
+    private static final LongAdder SLOW_QUERIES = new LongAdder();
+
+    private static volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dao.sql.slow-threshold", 1000L));
+
+    private SqlMetrics() {
+    }
+
+    /**
+     * 记录一次执行
+     *
+     * @param sql    sql模板
+     * @param params 参数，只在慢查询日志里输出，可以为null
+     * @param start  开始时间，System.nanoTime()
+     * @param rows   返回或者影响的行数，小于0表示未知
+     * @param failed 是否失败
+     */
+    public static void record(String sql, Object[] params, long start, long rows, boolean failed) {
+        if (null == sql) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Stats stats = stats(sql);
+        stats.latency.record(nanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+        long threshold = slowThresholdNanos;
+        if (threshold > 0 && nanos >= threshold) {
+            SLOW_QUERIES.increment();
+            log.warn("慢查询 {}ms rows={} failed={} sql---->{} params----{}", TimeUnit.NANOSECONDS.toMillis(nanos), rows, failed,
+                    truncate(sql, MAX_SQL_LENGTH), render(params));
+        }
+    }
+
+    /**
+     * 记录这次执行是否使用驱动缓存的服务端预编译语句，在 execute 之前调用<br>
+     * 同一条sql在一个连接上执行到 prepareThreshold 次后驱动改用服务端预编译，语句被挤出驱动缓存后重新计数；
+     * 不是 PostgreSQL 驱动的语句不统计
+     *
+     * @param sql   sql模板，与 {@link #record} 的相同
+     * @param state 即将执行的语句
+     */
+    public static void recordPrepare(String sql, Statement state) {
+        if (null == sql || null == state) {
+            return;
+        }
+        boolean serverPrepared;
+        try {
+            if (!state.isWrapperFor(PGStatement.class)) {
+                return;
+            }
+            serverPrepared = state.unwrap(PGStatement.class).isUseServerPrepare();
+        } catch (SQLException e) {
+            return;
+        }
+        Stats stats = stats(sql);
+        if (serverPrepared) {
+            stats.preparedHits.increment();
+        } else {
+            stats.preparedMisses.increment();
+        }
+    }
+
+    private static Stats stats(String sql) {
+        Stats stats = STATS.get(sql);
+        if (null == stats) {
+            stats = STATS.size() < MAX_TEMPLATES ? STATS.computeIfAbsent(sql, key -> new Stats()) : STATS.computeIfAbsent(OTHER, key -> new Stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 参数渲染成字符串，超长的参数（数组、大文本）截断
+     */
+    public static String render(Object[] params) {
+        if (null == params) {
+            return "[]";
+        }
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            Object param = params[i];
+            String value = param instanceof Object[] ? Arrays.deepToString((Object[]) param) : String.valueOf(param);
+            builder.append(truncate(value, MAX_RENDER_LENGTH));
+        }
+        return builder.append(']').toString();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength) + "...(" + value.length() + ")";
+    }
+
+    /**
+     * 当前统计，按总耗时从高到低排序
+     */
+    public static List<SqlStats> snapshot() {
+        List<SqlStats> result = new ArrayList<>(STATS.size());
+        for (Map.Entry<String, Stats> entry : STATS.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long count = latency.getCount();
+            result.add(new SqlStats(entry.getKey(), count, entry.getValue().rows.sum(), entry.getValue().errors.sum(),
+                    latency.getMeanMillis() * count, latency.getMeanMillis(), latency.getPercentileMillis(0.5),
+                    latency.getPercentileMillis(0.99), latency.getMaxMillis(),
+                    entry.getValue().preparedHits.sum(), entry.getValue().preparedMisses.sum()));
+        }
+        result.sort(Comparator.comparingDouble(SqlStats::getTotalMillis).reversed());
+        return result;
+    }
+
+    /**
+     * 某条sql模板的耗时直方图，没有执行过时返回null
+     */
+    public static LatencyHistogram latencyOf(String sql) {
+        Stats stats = STATS.get(sql);
+        return null == stats ? null : stats.latency;
+    }
+
+    /**
+     * 所有模板的服务端预编译命中率，没有统计时返回0
+     */
+    public static double getPreparedHitRate() {
+        long hits = 0;
+        long misses = 0;
+        for (Stats stats : STATS.values()) {
+            hits += stats.preparedHits.sum();
+            misses += stats.preparedMisses.sum();
+        }
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    public static long getSlowQueries() {
+        return SLOW_QUERIES.sum();
+    }
+
+    public static long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    /**
+     * 调整慢查询阈值，小于等于0关闭慢查询日志
+     */
+    public static void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public static void reset() {
+        STATS.clear();
+        SLOW_QUERIES.reset();
+    }
+
+    /**
+     * 注册到平台 MBeanServer，重复注册时忽略
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MXBeanImpl(), name);
+            }
+        } catch (JMException e) {
+            log.warn("注册 SqlMetrics MBean 失败: {}", ExceptionUtil.buildErrorMessage(e));
+        }
+    }
+
+    private static final class Stats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder rows = new LongAdder();
+
+        private final LongAdder errors = new LongAdder();
+
+        private final LongAdder preparedHits = new LongAdder();
+
+        private final LongAdder preparedMisses = new LongAdder();
+    }
+
+    /**
+     * 单条sql模板的统计快照
+     */
+    public static final class SqlStats {
+
+        private final String sql;
+
+        private final long count;
+
+        private final long rows;
+
+        private final long errors;
+
+        private final double totalMillis;
+
+        private final double meanMillis;
+
+        private final double p50Millis;
+
+        private final double p99Millis;
+
+        private final double maxMillis;
+
+        /**
+         * 使用服务端预编译语句执行的次数
+         */
+        private final long preparedHits;
+
+        /**
+         * 没有使用服务端预编译（还没到 prepareThreshold 或者已经被挤出驱动缓存）的次数
+         */
+        private final long preparedMisses;
+
+        @ConstructorProperties({"sql", "count", "rows", "errors", "totalMillis", "meanMillis", "p50Millis", "p99Millis", "maxMillis",
+                "preparedHits", "preparedMisses"})
+        public SqlStats(String sql, long count, long rows, long errors, double totalMillis, double meanMillis,
+                        double p50Millis, double p99Millis, double maxMillis, long preparedHits, long preparedMisses) {
+            this.sql = sql;
+            this.count = count;
+            this.rows = rows;
+            this.errors = errors;
+            this.totalMillis = totalMillis;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.preparedHits = preparedHits;
+            this.preparedMisses = preparedMisses;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getTotalMillis() {
+            return totalMillis;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public long getPreparedHits() {
+            return preparedHits;
+        }
+
+        public long getPreparedMisses() {
+            return preparedMisses;
+        }
+
+        public double getPreparedHitRate() {
+            return preparedHits + preparedMisses == 0 ? 0 : (double) preparedHits / (preparedHits + preparedMisses);
+        }
+    }
+
+    /**
+     * JMX 接口
+     */
+    public interface SqlMetricsMXBean {
+
+        List<SqlStats> getStatements();
+
+        long getSlowQueries();
+
+        double getPreparedHitRate();
+
+        long getSlowThresholdMillis();
+
+        void setSlowThresholdMillis(long millis);
+
+        void reset();
+    }
+
+    private static final class MXBeanImpl implements SqlMetricsMXBean {
+
+        @Override
+        public List<SqlStats> getStatements() {
+            return snapshot();
+        }
+
+        @Override
+        public long getSlowQueries() {
+            return SqlMetrics.getSlowQueries();
+        }
+
+        @Override
+        public double getPreparedHitRate() {
+            return SqlMetrics.getPreparedHitRate();
+        }
+
+        @Override
+        public long getSlowThresholdMillis() {
+            return SqlMetrics.getSlowThresholdMillis();
+        }
+
+        @Override
+        public void setSlowThresholdMillis(long millis) {
+            SqlMetrics.setSlowThresholdMillis(millis);
+        }
+
+        @Override
+        public void reset() {
+            SqlMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.xxw.base.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 生成的sql语句模板缓存<br>
+ * 以 (操作, 表名, 字段签名, 条件形状) 为key缓存sql文本，形状相同的调用只需要组装参数数组；
+ * sql文本保持稳定，驱动也可以复用服务端预编译语句。缓存满时清空重建，防止动态sql把缓存撑大
+ *
+ * @author ivan
+ */
+public final class SqlTemplateCache {
+
+    /**
+     * 最多缓存的sql模板数
+     */
+    public static final int MAX_SIZE = 4096;
+
+    private static final Map<Key, String> CACHE = new ConcurrentHashMap<>();
+
+    private static final LongAdder HITS = new LongAdder();
+
+    private static final LongAdder MISSES = new LongAdder();
+
+    private SqlTemplateCache() {
+    }
+
+    /**
+     * 获取sql模板，没有缓存时调用 builder 生成
+     *
+     * @param builder 生成sql文本
+     * @param shape   决定sql文本的全部信息，数组按内容比较
+     * @return sql文本
+     */
+    public static String get(Supplier<String> builder, Object... shape) {
+        Key key = new Key(shape);
+        String sql = CACHE.get(key);
+        if (sql != null) {
+            HITS.increment();
+            return sql;
+        }
+        MISSES.increment();
+        sql = builder.get();
+        if (CACHE.size() >= MAX_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(key, sql);
+        return sql;
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static final class Key {
+
+        private final Object[] shape;
+
+        private final int hash;
+
+        private Key(Object[] shape) {
+            this.shape = shape;
+            this.hash = Arrays.deepHashCode(shape);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Key && hash == ((Key) o).hash && Arrays.deepEquals(shape, ((Key) o).shape));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
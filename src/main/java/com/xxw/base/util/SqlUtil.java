@@ -1,34 +1,48 @@
 package com.xxw.base.util;
 
-import com.xxw.annotation.Table;
+import com.xxw.base.dao.EntityMeta;
 import com.xxw.base.dao.SqlAndParamBean;
 import com.xxw.base.query.Condition;
+import com.xxw.base.query.Direction;
+import com.xxw.base.query.KeysetToken;
 import com.xxw.base.query.Order;
 import com.xxw.base.query.Page;
 import com.xxw.base.query.Query;
 import com.xxw.http.ExceptionUtil;
-import jdk.nashorn.internal.ir.annotations.Ignore;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 
+import java.beans.Introspector;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 @Slf4j
 @UtilityClass
 public class SqlUtil {
 
-    private static final String TABLE_PREFIX = "tbl";
+    private static final String PRIMARY_KEY_FILED_NAME = EntityMeta.PRIMARY_KEY_FILED_NAME;
 
-    private static final String PRIMARY_KEY_FILED_NAME = "id";
+    /**
+     * 投影查询允许的字段名：字段名或者 别名.字段名
+     */
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    /**
+     * 最多缓存多少个投影类型的字段
+     */
+    private static final int MAX_PROJECTION_SIZE = 1024;
+
+    /**
+     * 投影类型 -> 查询的字段
+     */
+    private static final Map<Class<?>, List<String>> PROJECTION_FIELDS = new ConcurrentHashMap<>();
 
     /**
      * 生成插入的sql语句以及参数
@@ -38,27 +52,31 @@ public class SqlUtil {
      * @return SqlAndParamBean
      */
     public SqlAndParamBean generateInsertSqlAndParam(String tableName, Map<String, Object> dataMap) {
-        StringBuilder builder = new StringBuilder("insert into");
-        builder.append(" ");
-        builder.append(tableName);
-        builder.append("(");
-
         String[] key = new String[dataMap.keySet().size()];
         dataMap.keySet().toArray(key);
-        StringBuilder paramBuilder = new StringBuilder();
-        Object[] params = new Object[dataMap.keySet().size()];
+        Object[] params = new Object[key.length];
         for (int i = 0; i < key.length; i++) {
-            builder.append(key[i]);
-            builder.append(",");
-            paramBuilder.append("?");
-            paramBuilder.append(",");
             params[i] = dataMap.get(key[i]);
         }
-        builder.deleteCharAt(builder.length() - 1);
-        paramBuilder.deleteCharAt(paramBuilder.length() - 1);
-        builder.append(") values (");
-        builder.append(paramBuilder).append(")");
-        return new SqlAndParamBean(builder.toString(), params, null);
+        String sql = SqlTemplateCache.get(() -> {
+            StringBuilder builder = new StringBuilder("insert into");
+            builder.append(" ");
+            builder.append(tableName);
+            builder.append("(");
+            StringBuilder paramBuilder = new StringBuilder();
+            for (String k : key) {
+                builder.append(k);
+                builder.append(",");
+                paramBuilder.append("?");
+                paramBuilder.append(",");
+            }
+            builder.deleteCharAt(builder.length() - 1);
+            paramBuilder.deleteCharAt(paramBuilder.length() - 1);
+            builder.append(") values (");
+            builder.append(paramBuilder).append(")");
+            return builder.toString();
+        }, "insert", tableName, key);
+        return new SqlAndParamBean(sql, params, null);
     }
 
     /**
@@ -84,47 +102,156 @@ public class SqlUtil {
      * @throws IllegalAccessException   没有访问权限的异常
      */
     public SqlAndParamBean generateBatchInsertSqlAndParam(String tableName, List<?> objects) throws IllegalArgumentException, IllegalAccessException {
-        StringBuilder builder = new StringBuilder("insert into ");
-        builder.append(tableName).append(" (");
-        Class<?> clazz = objects.get(0).getClass();
-        StringBuilder paramBuilder = new StringBuilder();
-        List<Object[]> parameters = new ArrayList<>();
+        // 插入的字段以第一个对象中值不为null的字段为准
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        List<EntityMeta.Column> columns = meta.getNonNullColumns(objects.get(0));
+        String sql = generateMultiRowInsertSql(tableName, columns, 1);
 
-        while (clazz != Object.class) {
+        List<Object[]> parameters = new ArrayList<>(objects.size());
+        for (Object object : objects) {
+            parameters.add(getColumnValues(columns, object));
+        }
+        return new SqlAndParamBean(sql, null, parameters);
+    }
 
-            List<Field> fieldList = getAllEntityToDBFields(clazz, objects.get(0));
 
-            for (Field field : fieldList) {
-                field.setAccessible(true);
-                List<Object> values = new ArrayList<>();
-                for (Object object : objects) {
-                    Object value = field.get(object);
-                    values.add(value);
-                }
-                Object[] objects2 = values.toArray();
-                parameters.add(objects2);
+    public SqlAndParamBean generateBatchInsertSqlAndParam(List<?> objects) throws IllegalArgumentException, IllegalAccessException {
+        String tableName = getTableNameByClass(objects.get(0).getClass());
+        return generateBatchInsertSqlAndParam(tableName, objects);
+    }
 
-                builder.append(field.getName());
-                builder.append(",");
-                paramBuilder.append("?");
-                paramBuilder.append(",");
+    /**
+     * 生成多行插入的sql语句，例如：insert into tbl_user (id,name) values (?,?),(?,?)
+     *
+     * @param tableName 表名
+     * @param columns   插入的字段
+     * @param rows      行数
+     * @return Sql语句
+     */
+    public String generateMultiRowInsertSql(String tableName, List<EntityMeta.Column> columns, int rows) {
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+        }
+        return SqlTemplateCache.get(() -> buildMultiRowInsertSql(tableName, names, rows), "insert", tableName, names, rows);
+    }
 
-            }
-            clazz = clazz.getSuperclass();
+    /**
+     * 生成多行插入或更新的sql语句，例如：<br>
+     * insert into tbl_user (id,name) values (?,?),(?,?) on conflict (id) do update set name = coalesce(excluded.name, tbl_user.name)<br>
+     * 冲突时值为null的字段保留原来的值
+     *
+     * @param tableName      表名
+     * @param columns        插入的字段
+     * @param rows           行数
+     * @param conflictColumn 冲突字段，一般是主键
+     * @param updateColumns  冲突时更新的字段，为空时 do nothing
+     * @return Sql语句
+     */
+    public String generateMultiRowUpsertSql(String tableName, List<EntityMeta.Column> columns, int rows, String conflictColumn, List<EntityMeta.Column> updateColumns) {
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+        }
+        String[] updates = new String[updateColumns.size()];
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = updateColumns.get(i).getName();
         }
+        return SqlTemplateCache.get(() -> {
+            // 冲突时引用已有行只能用不带schema的表名
+            String target = tableName.substring(tableName.lastIndexOf('.') + 1);
+            StringBuilder builder = new StringBuilder(buildMultiRowInsertSql(tableName, names, rows));
+            builder.append(" on conflict (").append(conflictColumn).append(") do ");
+            if (updates.length == 0) {
+                return builder.append("nothing").toString();
+            }
+            builder.append("update set ");
+            for (int i = 0; i < updates.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(updates[i]).append(" = coalesce(excluded.").append(updates[i]).append(", ")
+                        .append(target).append(".").append(updates[i]).append(")");
+            }
+            return builder.toString();
+        }, "upsert", tableName, names, rows, conflictColumn, updates);
+    }
 
-        builder.deleteCharAt(builder.length() - 1);
-        paramBuilder.deleteCharAt(paramBuilder.length() - 1);
-        builder.append(") values (");
-        builder.append(paramBuilder).append(")");
+    /**
+     * 生成按主键批量更新的sql语句，例如：<br>
+     * update tbl_user set name = v.name from (values (?::varchar,?::varchar),(?::varchar,?::varchar)) as v (id,name) where tbl_user.id = v.id
+     *
+     * @param tableName        表名
+     * @param columns          values 里的字段，第一个是主键，其余是要更新的字段
+     * @param castTypes        每个字段的参数类型，为null的不做转换
+     * @param rows             行数
+     * @param keepStoredOnNull 值为null时是否保留原来的值
+     * @return Sql语句
+     */
+    public String generateMultiRowUpdateSql(String tableName, List<EntityMeta.Column> columns, String[] castTypes, int rows, boolean keepStoredOnNull) {
+        String[] names = new String[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+        }
+        return SqlTemplateCache.get(() -> {
+            String target = tableName.substring(tableName.lastIndexOf('.') + 1);
+            StringBuilder rowBuilder = new StringBuilder("(");
+            for (int i = 0; i < names.length; i++) {
+                rowBuilder.append(i == 0 ? "?" : ",?");
+                if (null != castTypes[i]) {
+                    rowBuilder.append("::").append(castTypes[i]);
+                }
+            }
+            rowBuilder.append(")");
 
-        return new SqlAndParamBean(builder.toString(), null, transForm(parameters));
+            StringBuilder builder = new StringBuilder("update ").append(tableName).append(" set ");
+            for (int i = 1; i < names.length; i++) {
+                if (i > 1) {
+                    builder.append(", ");
+                }
+                builder.append(names[i]).append(" = ");
+                if (keepStoredOnNull) {
+                    builder.append("coalesce(v.").append(names[i]).append(", ").append(target).append(".").append(names[i]).append(")");
+                } else {
+                    builder.append("v.").append(names[i]);
+                }
+            }
+            builder.append(" from (values ");
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    builder.append(",");
+                }
+                builder.append(rowBuilder);
+            }
+            builder.append(") as v (").append(String.join(",", names)).append(") where ")
+                    .append(target).append(".").append(names[0]).append(" = v.").append(names[0]);
+            return builder.toString();
+        }, "update values", tableName, names, castTypes, rows, keepStoredOnNull);
     }
 
+    private String buildMultiRowInsertSql(String tableName, String[] columns, int rows) {
+        StringBuilder rowBuilder = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+            rowBuilder.append(i == 0 ? "?" : ",?");
+        }
+        rowBuilder.append(")");
 
-    public SqlAndParamBean generateBatchInsertSqlAndParam(List<?> objects) throws IllegalArgumentException, IllegalAccessException {
-        String tableName = getTableNameByClass(objects.get(0).getClass());
-        return generateBatchInsertSqlAndParam(tableName, objects);
+        StringBuilder builder = new StringBuilder(32 + tableName.length() + columns.length * 16 + rows * (rowBuilder.length() + 1));
+        builder.append("insert into ").append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                builder.append(",");
+            }
+            builder.append(columns[i]);
+        }
+        builder.append(") values ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                builder.append(",");
+            }
+            builder.append(rowBuilder);
+        }
+        return builder.toString();
     }
 
     /**
@@ -138,14 +265,22 @@ public class SqlUtil {
      * @return Sql语句
      */
     private String generateQueryBaseSql(String fields, String tableName, Map<String, Object> dataMap, String pagingConditions, String sortConditionS) {
+        String[] keys = dataMap == null ? new String[0] : dataMap.keySet().toArray(new String[0]);
+        if (StringUtils.isNotEmpty(pagingConditions)) {
+            // 分页值直接拼在sql里，每页都不一样，不缓存
+            return buildQueryBaseSql(fields, tableName, keys, pagingConditions, sortConditionS);
+        }
+        return SqlTemplateCache.get(() -> buildQueryBaseSql(fields, tableName, keys, null, sortConditionS),
+                "select", fields, tableName, keys, sortConditionS);
+    }
+
+    private String buildQueryBaseSql(String fields, String tableName, String[] keys, String pagingConditions, String sortConditionS) {
         StringBuilder builder = new StringBuilder("select ");
         builder.append(fields);
         builder.append(" from ");
         builder.append(tableName);
-        if (dataMap != null && dataMap.size() != 0) {
+        if (keys.length != 0) {
             builder.append(" where ");
-            String[] keys = new String[dataMap.size()];
-            dataMap.keySet().toArray(keys);
             for (int i = 0; i < keys.length; i++) {
                 builder.append(keys[i]);
                 builder.append(" = ?");
@@ -207,12 +342,49 @@ public class SqlUtil {
             return null;
         }
 
+        Condition[] conditions = query.getWheres();
+        Order[] orders = query.getOrders();
+        Page page = query.getPage();
+        boolean keyset = !isTotalRecord && null != page && page.isKeyset();
+        Object[] lastKeys = keyset ? page.resolveLastKeys() : null;
+        boolean offsetPaging = !isTotalRecord && !keyset && null != page && page.getStartItems() >= 0 && page.getEndItems() > 0;
+
+        /* sql参数，条件的形状决定sql文本，参数每次单独组装 **/
+        List<Object> paramList = new ArrayList<>();
+        Object[] conditionShapes = null;
+        if (null != conditions && conditions.length > 0) {
+            conditionShapes = new Object[conditions.length];
+            for (int i = 0; i < conditions.length; i++) {
+                if (Objects.nonNull(conditions[i])) {
+                    conditions[i].collectParams(paramList);
+                    conditionShapes[i] = conditionShape(conditions[i]);
+                }
+            }
+        }
+        if (null != lastKeys) {
+            addKeysetParams(orders, lastKeys, paramList);
+        }
+        if (keyset) {
+            // 多取一行判断是否还有下一页
+            paramList.add(page.getPageSize() + 1);
+        } else if (offsetPaging) {
+            paramList.add(page.getStartItems());
+            paramList.add(page.getEndItems());
+        }
+
+        Object[] fieldNames = null == query.getFields() ? null : query.getFields().toArray();
+        String sql = SqlTemplateCache.get(() -> buildQuerySql(query, isTotalRecord, keyset, null != lastKeys, offsetPaging),
+                "query", isTotalRecord, fieldNames, query.getTableNames(), conditionShapes, orders, keyset, null != lastKeys, offsetPaging);
+        return new SqlAndParamBean(sql, paramList.toArray(), null);
+    }
+
+    /**
+     * 根据Query对象拼接sql文本，分页的 offset、limit 使用占位符
+     */
+    private String buildQuerySql(Query query, boolean isTotalRecord, boolean keyset, boolean hasLastKeys, boolean offsetPaging) {
         /*sql语句组装器**/
         StringBuilder sqlBuilder = new StringBuilder();
 
-        /* sql参数 **/
-        Vector<Object> paramList = new Vector<>();
-
         /* sql字段 **/
         StringBuilder fields = new StringBuilder();
 
@@ -248,31 +420,158 @@ public class SqlUtil {
 
         if (null != query.getWheres() && query.getWheres().length > 0) {
             wheres.append(" where ").append(buildCondition(null, query.getWheres()));
-            for (Condition condition : query.getWheres()) {
-                if (Objects.nonNull(condition) && Objects.nonNull(condition.getValue())) {
-                    paramList.add(condition.getValue());
-                }
-            }
         }
 
-        if (null != query.getPage() && query.getPage().getStartItems() >= 0 && query.getPage().getEndItems() > 0) {
-            pagingConditions.append(" limit ").append(query.getPage().getEndItems()).append(" offset ").append(query.getPage().getStartItems());
+        if (keyset) {
+            // 键集分页：从上一页最后一行之后继续读取，不需要扫描并丢弃前面的数据
+            if (hasLastKeys) {
+                wheres.append(wheres.length() == 0 ? " where " : " and ");
+                appendKeysetCondition(wheres, query.getOrders(), false);
+            }
+            pagingConditions.append(" limit ?");
+        } else if (offsetPaging) {
+            pagingConditions.append(" offset ? limit ?");
         }
 
         if (null != query.getOrders() && query.getOrders().length > 0) {
-            sortConditions.append(" order by ");
-            for (Order order : query.getOrders()) {
-                sortConditions.append(order.getField()).append(" ").append(order.getDirection().toString());
-            }
+            appendOrderBy(sortConditions, query.getOrders(), false);
         }
 
         if (isTotalRecord) {
-            sqlBuilder.append("select count(1)").append(tableNames).append(wheres).append(pagingConditions);
+            sqlBuilder.append("select count(1)").append(tableNames).append(wheres);
         } else {
             sqlBuilder.append(fields).append(tableNames).append(wheres).append(sortConditions).append(pagingConditions);
         }
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * 条件的形状：字段、运算符、是否占位符，以及直接拼进sql的值
+     */
+    private Object[] conditionShape(Condition condition) {
+        condition.checkValueNull();
+        boolean literal = !condition.isPlaceHolder() || condition.isOperatorIs();
+        return new Object[]{condition.getField(), condition.getOperator(), condition.isPlaceHolder(),
+                literal ? condition.getValue() : null,
+                condition.isOperatorBetween() && !condition.isPlaceHolder() ? condition.getSecondValue() : null};
+    }
+
+    /**
+     * 在任意查询语句外层加上键集分页条件，例如：
+     * select * from (select ...) keyset_t where (create_time, id) < (?, ?) order by create_time desc, id desc limit 21，
+     * 多取的一行用来判断是否还有下一页
+     *
+     * @param sql      原查询语句，不能带 order by 和 limit
+     * @param params   原查询参数
+     * @param orders   排序字段，必须是原查询输出的列名，最后一个字段需要唯一（例如主键）
+     * @param lastKeys 上一页最后一行的排序字段值，为null时查询第一页
+     * @param pageSize 每页的记录数
+     * @return SqlAndParamBean
+     */
+    public SqlAndParamBean generateKeysetSqlAndParam(String sql, Object[] params, Order[] orders, Object[] lastKeys, int pageSize) {
+        List<Object> paramList = new ArrayList<>();
+        if (null != params) {
+            paramList.addAll(Arrays.asList(params));
+        }
+        if (null != lastKeys) {
+            addKeysetParams(orders, lastKeys, paramList);
+        }
+        paramList.add(pageSize + 1);
+        String keysetSql = SqlTemplateCache.get(() -> {
+            StringBuilder builder = new StringBuilder("select * from (").append(sql).append(") keyset_t");
+            if (null != lastKeys) {
+                builder.append(" where ");
+                appendKeysetCondition(builder, orders, true);
+            }
+            appendOrderBy(builder, orders, true);
+            return builder.append(" limit ?").toString();
+        }, "keyset", sql, orders, null != lastKeys);
+        return new SqlAndParamBean(keysetSql, paramList.toArray(), null);
+    }
+
+    /**
+     * 生成键集分页条件<br>
+     * 排序方向一致时使用行比较 (a, b) > (?, ?)，可以直接走 (a, b) 上的联合索引；
+     * 方向不一致时展开为 (a > ?) or (a = ? and b < ?)
+     *
+     * @param unqualified 是否去掉字段的表别名，外层包装查询时使用
+     */
+    private void appendKeysetCondition(StringBuilder builder, Order[] orders, boolean unqualified) {
+        String[] fields = new String[orders.length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = unqualified ? KeysetToken.columnName(orders[i].getField()) : orders[i].getField();
+        }
+        if (isSameDirection(orders)) {
+            StringBuilder keys = new StringBuilder();
+            StringBuilder marks = new StringBuilder();
+            for (int i = 0; i < orders.length; i++) {
+                keys.append(i == 0 ? "" : ", ").append(fields[i]);
+                marks.append(i == 0 ? "?" : ", ?");
+            }
+            builder.append("(").append(keys).append(") ").append(directionOf(orders[0]) == Direction.DESC ? "<" : ">")
+                    .append(" (").append(marks).append(")");
+            return;
+        }
+        builder.append("(");
+        for (int i = 0; i < orders.length; i++) {
+            builder.append(i == 0 ? "(" : " or (");
+            for (int j = 0; j < i; j++) {
+                builder.append(fields[j]).append(" = ? and ");
+            }
+            builder.append(fields[i]).append(directionOf(orders[i]) == Direction.DESC ? " < ?)" : " > ?)");
+        }
+        builder.append(")");
+    }
+
+    /**
+     * 按 {@link #appendKeysetCondition(StringBuilder, Order[], boolean)} 生成的占位符顺序回填参数
+     */
+    private void addKeysetParams(Order[] orders, Object[] lastKeys, List<Object> paramList) {
+        if (null == orders || orders.length == 0) {
+            throw new IllegalArgumentException("键集分页必须指定排序字段");
+        }
+        if (lastKeys.length != orders.length) {
+            throw new IllegalArgumentException("键集分页的起始值个数与排序字段个数不一致");
+        }
+        if (isSameDirection(orders)) {
+            paramList.addAll(Arrays.asList(lastKeys));
+            return;
+        }
+        for (int i = 0; i < orders.length; i++) {
+            for (int j = 0; j < i; j++) {
+                paramList.add(lastKeys[j]);
+            }
+            paramList.add(lastKeys[i]);
+        }
+    }
+
+    private boolean isSameDirection(Order[] orders) {
+        for (Order order : orders) {
+            if (directionOf(order) != directionOf(orders[0])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 生成排序语句
+     *
+     * @param unqualified 是否去掉字段的表别名，外层包装查询时使用
+     */
+    private void appendOrderBy(StringBuilder builder, Order[] orders, boolean unqualified) {
+        builder.append(" order by ");
+        for (int i = 0; i < orders.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(unqualified ? KeysetToken.columnName(orders[i].getField()) : orders[i].getField())
+                    .append(" ").append(directionOf(orders[i]).toString());
+        }
+    }
 
-        return new SqlAndParamBean(sqlBuilder.toString(), paramList.toArray(), null);
+    private Direction directionOf(Order order) {
+        return null == order.getDirection() ? Direction.ASC : order.getDirection();
     }
 
     /**
@@ -283,11 +582,11 @@ public class SqlUtil {
      */
     public SqlAndParamBean generateWhereSqlAndParamByQuery(Query query) {
         StringBuilder wheres = new StringBuilder();
-        Vector<Object> paramList = new Vector<>();
+        List<Object> paramList = new ArrayList<>();
         if (null != query.getWheres() && query.getWheres().length > 0) {
             wheres.append(" where ").append(buildCondition(null, query.getWheres()));
             for (Condition condition : query.getWheres()) {
-                paramList.add(condition.getValue());
+                condition.collectParams(paramList);
             }
         }
         return new SqlAndParamBean(wheres.toString(), paramList.toArray(), null);
@@ -300,6 +599,23 @@ public class SqlUtil {
      * @description dataMap 数据只做and操作，or操作请自行编写sql语句
      */
     public SqlAndParamBean generateSearchSqlAndParam(String tableName, Map<String, Object> dataMap, String pagingConditions, String sortConditions) {
+        return generateSearchSqlAndParam("*", tableName, dataMap, pagingConditions, sortConditions);
+    }
+
+    /**
+     * 只查询指定字段，字段为空时查询全部字段
+     *
+     * @param fields         需要查询的字段名，只能是字段名（可以带表别名前缀）
+     * @param tableName      表名
+     * @param dataMap        查询条件，只做and操作
+     * @param sortConditions 排序语句 id desc, age asc
+     * @return SqlAndParamBean
+     */
+    public SqlAndParamBean generateSearchSqlAndParam(Collection<String> fields, String tableName, Map<String, Object> dataMap, String sortConditions) {
+        return generateSearchSqlAndParam(selectList(fields), tableName, dataMap, null, sortConditions);
+    }
+
+    private SqlAndParamBean generateSearchSqlAndParam(String fields, String tableName, Map<String, Object> dataMap, String pagingConditions, String sortConditions) {
         Object[] params = null;
 
         if (dataMap != null && dataMap.size() != 0) {
@@ -310,10 +626,77 @@ public class SqlUtil {
                 params[i] = dataMap.get(keys[i]);
             }
         }
-        String sql = generateQueryBaseSql("*", tableName, dataMap, pagingConditions, sortConditions);
+        String sql = generateQueryBaseSql(fields, tableName, dataMap, pagingConditions, sortConditions);
         return new SqlAndParamBean(sql, params, null);
     }
 
+    /**
+     * 生成 select 后面的字段列表，字段为空时返回 *
+     *
+     * @param fields 字段名
+     * @return 逗号分隔的字段列表
+     */
+    public String selectList(Collection<String> fields) {
+        if (null == fields || fields.isEmpty()) {
+            return "*";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String field : fields) {
+            if (null == field || !FIELD_NAME.matcher(field).matches()) {
+                throw new IllegalArgumentException("不合法的查询字段: " + field);
+            }
+            if (builder.length() > 0) {
+                builder.append(",");
+            }
+            builder.append(field);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 投影类型需要查询的字段：类取实体字段（与实体一样按属性名对应列名），接口取 getXxx、isXxx 方法对应的属性名
+     *
+     * @param projection 投影类型，DTO类或者只有getter的接口
+     * @return 字段名
+     */
+    public List<String> projectionFields(Class<?> projection) {
+        List<String> fields = PROJECTION_FIELDS.get(projection);
+        if (null != fields) {
+            return fields;
+        }
+        fields = new ArrayList<>();
+        if (projection.isInterface()) {
+            for (Method method : projection.getMethods()) {
+                String name = method.getName();
+                if (method.getParameterCount() != 0 || method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                String property = null;
+                if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class) {
+                    property = name.substring(3);
+                } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType() == boolean.class) {
+                    property = name.substring(2);
+                }
+                if (null != property && !fields.contains(Introspector.decapitalize(property))) {
+                    fields.add(Introspector.decapitalize(property));
+                }
+            }
+        } else {
+            for (EntityMeta.Column column : EntityMeta.of(projection).getColumns()) {
+                fields.add(column.getName());
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException(projection.getName() + " 没有可以查询的字段");
+        }
+        fields = Collections.unmodifiableList(fields);
+        if (PROJECTION_FIELDS.size() >= MAX_PROJECTION_SIZE) {
+            PROJECTION_FIELDS.clear();
+        }
+        PROJECTION_FIELDS.put(projection, fields);
+        return fields;
+    }
+
     /**
      * @param tableName 表名
      * @param dataMap   数据实体的Map对象
@@ -358,14 +741,6 @@ public class SqlUtil {
         return new SqlAndParamBean(sql, condition.values().toArray(), null);
     }
 
-    /**
-     * 生成批量删除的Sql以及参数的实体对象
-     *
-     * @param tableName 表名
-     * @param dataMaps  数据对象集合
-     * @return Sql语句
-     * @description dataMap数据只做and操作，or操作请自行编写sql语句
-     */
     private String generateBatchDeleteSql(String tableName, String idFieldName, List<String> dataMaps) {
         StringBuilder builder = new StringBuilder("delete from ");
         builder.append(tableName);
@@ -382,6 +757,19 @@ public class SqlUtil {
         return builder.toString();
     }
 
+    /**
+     * 生成按数组删除的Sql语句：delete from tbl where id = any(?)，所有主键作为一个数组参数绑定，
+     * sql文本与主键个数无关，配合 BaseDao.deleteBatchHardByArray 使用
+     *
+     * @param tableName   表名
+     * @param idFieldName 主键字段名
+     * @return Sql语句
+     */
+    public String generateDeleteByArraySql(String tableName, String idFieldName) {
+        return SqlTemplateCache.get(() -> "delete from " + tableName + " where " + idFieldName + " = any(?)",
+                "delete any", tableName, idFieldName);
+    }
+
     /**
      * 生成删除的Sql以及参数的实体对象
      *
@@ -392,27 +780,34 @@ public class SqlUtil {
      */
     public SqlAndParamBean generateDeleteSqlAndParam(String tableName, Map<String, Object> dataMap) {
         Object[] params = null;
-        StringBuilder builder = new StringBuilder("delete from");
-        builder.append(" ");
-        builder.append(tableName);
+        String[] keys = new String[0];
         if (dataMap != null && dataMap.size() != 0) {
-            builder.append(" where ");
-
-            String[] keys = new String[dataMap.size()];
+            keys = new String[dataMap.size()];
             dataMap.keySet().toArray(keys);
-            params = new Object[dataMap.keySet().size()];
+            params = new Object[keys.length];
             for (int i = 0; i < keys.length; i++) {
-                builder.append(keys[i]);
-                builder.append("=");
-                builder.append("?");
-                if (i != keys.length - 1) {
-                    builder.append(" and ");
-                }
                 params[i] = dataMap.get(keys[i]);
             }
         }
-
-        return new SqlAndParamBean(builder.toString(), params, null);
+        String[] whereKeys = keys;
+        String sql = SqlTemplateCache.get(() -> {
+            StringBuilder builder = new StringBuilder("delete from");
+            builder.append(" ");
+            builder.append(tableName);
+            if (whereKeys.length != 0) {
+                builder.append(" where ");
+                for (int i = 0; i < whereKeys.length; i++) {
+                    builder.append(whereKeys[i]);
+                    builder.append("=");
+                    builder.append("?");
+                    if (i != whereKeys.length - 1) {
+                        builder.append(" and ");
+                    }
+                }
+            }
+            return builder.toString();
+        }, "delete", tableName, whereKeys);
+        return new SqlAndParamBean(sql, params, null);
     }
 
 
@@ -446,8 +841,6 @@ public class SqlUtil {
     }
 
     private SqlAndParamBean generateUpdateSqlAndParam(String tableName, Map<String, Object> dataMap, String primaryName, boolean isFilterNullValue) throws IllegalArgumentException {
-        StringBuilder whereBuilder = new StringBuilder(" where ");
-        StringBuilder updateBuilder = new StringBuilder("update ").append(tableName).append(" set ");
         String[] keys = new String[dataMap.size()];
         dataMap.keySet().toArray(keys);
         List<Object> objList = new ArrayList<>();
@@ -456,28 +849,31 @@ public class SqlUtil {
         String primaryFiledName = StringUtils.isNotEmpty(primaryName) ? primaryName : PRIMARY_KEY_FILED_NAME;
 
         for (String key : keys) {
-            Object object = dataMap.get(key);
             if (!primaryFiledName.equals(key)) {
-                if (isFilterNullValue && object != null && StringUtils.isNotNull(object.toString())) {
+                objList.add(dataMap.get(key));
+            } else {
+                whereList.add(dataMap.get(key));
+            }
+        }
+        objList.addAll(whereList);
+        String sql = SqlTemplateCache.get(() -> {
+            StringBuilder whereBuilder = new StringBuilder(" where ");
+            StringBuilder updateBuilder = new StringBuilder("update ").append(tableName).append(" set ");
+            for (String key : keys) {
+                if (!primaryFiledName.equals(key)) {
                     updateBuilder.append(key);
                     updateBuilder.append(" = ? ,");
-                    objList.add(object);
                 } else {
-                    updateBuilder.append(key);
-                    updateBuilder.append(" = ? ,");
-                    objList.add(object);
+                    whereBuilder.append(key);
+                    whereBuilder.append(" = ? ");
                 }
-            } else {
-                whereBuilder.append(key);
-                whereBuilder.append(" = ? ");
-                whereList.add(object);
             }
-        }
-        if (updateBuilder.toString().endsWith(",")) {
-            updateBuilder.deleteCharAt(updateBuilder.length() - 1);
-        }
-        objList.addAll(whereList);
-        return new SqlAndParamBean(updateBuilder.append(whereBuilder).toString(), objList.toArray(), null);
+            if (updateBuilder.toString().endsWith(",")) {
+                updateBuilder.deleteCharAt(updateBuilder.length() - 1);
+            }
+            return updateBuilder.append(whereBuilder).toString();
+        }, "update", tableName, keys, primaryFiledName);
+        return new SqlAndParamBean(sql, objList.toArray(), null);
     }
 
     /**
@@ -570,57 +966,37 @@ public class SqlUtil {
     }
 
     public List<String> generateBatchUpdateSqlList(List<?> objects) throws IllegalArgumentException {
-        final Class<?>[] clazz = {objects.get(0).getClass()};
-        final String tableName = getTableNameByClass(clazz[0]);
-        List<String> sqlStrings = new ArrayList<>();
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        final String tableName = meta.getTableName();
+        List<String> sqlStrings = new ArrayList<>(objects.size());
 
-        objects.forEach(object -> {
-            clazz[0] = objects.get(0).getClass();
-            StringBuilder updateBuilder = new StringBuilder();
+        for (Object object : objects) {
+            StringBuilder updateBuilder = new StringBuilder("update ").append(tableName).append(" set ");
             StringBuilder whereBuilder = new StringBuilder();
 
-            List<Field> fieldList = getAllEntityToDBFields(clazz[0], object);
-            if (CollectionUtil.isNotEmpty(fieldList)) {
-                updateBuilder.append("update ").append(tableName).append(" set ");
-            }
-
-            while (clazz[0] != Object.class) {
-                fieldList = getAllEntityToDBFields(clazz[0], object);
-                if (CollectionUtil.isNotEmpty(fieldList)) {
-                    for (Field field : fieldList) {
-                        field.setAccessible(true);
-                        Object fieldValue = null;
-                        try {
-                            fieldValue = field.get(object);
-                        } catch (IllegalAccessException e) {
-                            log.error("批量更新sql语句出错...{}", ExceptionUtil.buildErrorMessage(e));
-                        }
-                        if (!PRIMARY_KEY_FILED_NAME.equals(field.getName())) {
-                            if (fieldValue != null && StringUtils.isNotEmpty(fieldValue.toString())) {
-                                updateBuilder.append(field.getName());
-                                updateBuilder.append("=");
-                                if (field.getType().equals(String.class)) {
-                                    updateBuilder.append("'");
-                                    updateBuilder.append(fieldValue);
-                                    updateBuilder.append("'");
-                                } else {
-                                    updateBuilder.append(fieldValue);
-                                }
-                                updateBuilder.append(",");
-                            }
+            for (EntityMeta.Column column : meta.getColumns()) {
+                Object fieldValue = column.getValue(object);
+                if (!column.isPrimaryKey()) {
+                    if (fieldValue != null && StringUtils.isNotEmpty(fieldValue.toString())) {
+                        updateBuilder.append(column.getName());
+                        updateBuilder.append("=");
+                        if (column.getType().equals(String.class)) {
+                            updateBuilder.append("'");
+                            updateBuilder.append(fieldValue);
+                            updateBuilder.append("'");
                         } else {
-                            if (fieldValue == null || StringUtils.isEmpty(fieldValue.toString())) {
-                                throw new RuntimeException("主键ID的值不能为空....");
-                            }
-                            whereBuilder.append(" where ");
-                            whereBuilder.append(field.getName());
-                            whereBuilder.append("='");
-                            whereBuilder.append(fieldValue);
-                            whereBuilder.append("' ;");
+                            updateBuilder.append(fieldValue);
                         }
+                        updateBuilder.append(",");
                     }
+                } else {
+                    checkPrimaryKeyValue(fieldValue);
+                    whereBuilder.append(" where ");
+                    whereBuilder.append(column.getName());
+                    whereBuilder.append("='");
+                    whereBuilder.append(fieldValue);
+                    whereBuilder.append("' ;");
                 }
-                clazz[0] = clazz[0].getSuperclass();
             }
 
             if (updateBuilder.toString().endsWith(",")) {
@@ -629,83 +1005,27 @@ public class SqlUtil {
 
             updateBuilder.append(whereBuilder);
             sqlStrings.add(updateBuilder.toString());
-
-        });
+        }
         return sqlStrings;
     }
 
     /**
-     * 实体的属性必须都不为空或者数据统一
+     * 实体的属性必须都不为空或者数据统一，更新的字段以第一个对象中值不为空的字段为准
      *
      * @param objects 实体对象集合
      * @return SqlAndParamBean
      * @throws IllegalArgumentException 不合法的参数异常
      */
     public SqlAndParamBean generateBatchUpdateSqlAndParam(List<?> objects) throws IllegalArgumentException {
-        Class<?> objectClass = objects.get(0).getClass();
-        final String tableName = getTableNameByClass(objectClass);
-        List<Object[]> parameters = new ArrayList<>();
-        String sqlString = "";
-
-        for (Object object : objects) {
-            List<Object> values = new ArrayList<>();
-            List<Object> whereCondition = new ArrayList<>();
-            StringBuilder whereBuilder = new StringBuilder();
-            StringBuilder updateBuilder = new StringBuilder();
-            List<Field> fieldList = getAllEntityToDBFields(objectClass, object);
-
-            if (CollectionUtil.isNotEmpty(fieldList)) {
-                updateBuilder.append("update ").append(tableName).append(" set ");
-            }
-
-            while (objectClass != Object.class) {
-                fieldList = getAllEntityToDBFields(objectClass, object);
-
-                if (CollectionUtil.isNotEmpty(fieldList)) {
-                    fieldList.forEach(field -> {
-                        field.setAccessible(true);
-                        Object fieldValue = null;
-                        try {
-                            fieldValue = field.get(object);
-                        } catch (IllegalAccessException e) {
-                            log.error("批量更新sql语句出错... {}", ExceptionUtil.buildErrorMessage(e));
-                        }
-                        if (!PRIMARY_KEY_FILED_NAME.equals(field.getName())) {
-                            if (fieldValue != null && StringUtils.isNotEmpty(fieldValue.toString())) {
-                                updateBuilder.append(field.getName());
-                                updateBuilder.append("=?");
-                                updateBuilder.append(",");
-                                values.add(fieldValue);
-                            }
-                        } else {
-
-                            if (Objects.isNull(fieldValue) || StringUtils.isEmpty(fieldValue.toString())) {
-                                throw new RuntimeException("主键ID的值不能为空....");
-                            }
-
-                            whereBuilder.append(" where ");
-                            whereBuilder.append(field.getName());
-                            whereBuilder.append("=");
-                            whereBuilder.append("?");
-                            whereBuilder.append(" ;");
-                            whereCondition.add(fieldValue);
-                        }
-
-                    });
-                }
-                objectClass = objectClass.getSuperclass();
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        List<EntityMeta.Column> columns = new ArrayList<>();
+        for (EntityMeta.Column column : meta.getColumns()) {
+            Object fieldValue = column.getValue(objects.get(0));
+            if (!column.isPrimaryKey() && fieldValue != null && StringUtils.isNotEmpty(fieldValue.toString())) {
+                columns.add(column);
             }
-
-            if (updateBuilder.toString().endsWith(",")) {
-                updateBuilder.deleteCharAt(updateBuilder.length() - 1);
-            }
-            updateBuilder.append(whereBuilder);
-            sqlString = updateBuilder.toString();
-            values.addAll(whereCondition);
-            parameters.add(values.toArray());
         }
-
-        return new SqlAndParamBean(sqlString, null, parameters);
+        return generateBatchUpdateSqlAndParam(meta, columns, objects);
     }
 
     /**
@@ -716,70 +1036,60 @@ public class SqlUtil {
      * @throws IllegalArgumentException 不合法的参数异常
      */
     public SqlAndParamBean generateBatchUpdateSqlAndAllParam(List<?> objects) throws IllegalArgumentException {
-        final Class<?>[] clazz = {objects.get(0).getClass()};
-        final String tableName = getTableNameByClass(clazz[0]);
-        List<Object[]> parameters = new ArrayList<>();
-        AtomicReference<String> sqlString = new AtomicReference<>("");
-
-        objects.forEach(object -> {
-            clazz[0] = objects.get(0).getClass();
-            List<Object> values = new ArrayList<>();
-            List<Object> whereCondition = new ArrayList<>();
-            StringBuilder whereBuilder = new StringBuilder();
-            StringBuilder updateBuilder = new StringBuilder();
-            List<Field> fieldList = getAllEntityToDBFields(clazz[0], object);
-
-            if (CollectionUtil.isNotEmpty(fieldList)) {
-                updateBuilder.append("update ").append(tableName).append(" set ");
+        EntityMeta meta = EntityMeta.of(objects.get(0).getClass());
+        List<EntityMeta.Column> columns = new ArrayList<>();
+        for (EntityMeta.Column column : meta.getColumns()) {
+            if (!column.isPrimaryKey()) {
+                columns.add(column);
             }
+        }
+        return generateBatchUpdateSqlAndParam(meta, columns, objects);
+    }
 
-            while (clazz[0] != Object.class) {
-                fieldList = getAllEntityToDBFields(clazz[0], object);
-
-                if (CollectionUtil.isNotEmpty(fieldList)) {
-                    fieldList.forEach(field -> {
-                        field.setAccessible(true);
-                        Object fieldValue = null;
-                        try {
-                            fieldValue = field.get(object);
-                        } catch (IllegalAccessException e) {
-                            log.error("批量更新sql语句出错... {}", ExceptionUtil.buildErrorMessage(e));
-                        }
-                        if (!PRIMARY_KEY_FILED_NAME.equals(field.getName())) {
-                            updateBuilder.append(field.getName());
-                            updateBuilder.append("=?");
-                            updateBuilder.append(",");
-                            values.add(fieldValue);
-                        } else {
-
-                            if (fieldValue == null || StringUtils.isEmpty(fieldValue.toString())) {
-                                throw new RuntimeException("主键ID的值不能为空....");
-                            }
-
-                            whereBuilder.append(" where ");
-                            whereBuilder.append(field.getName());
-                            whereBuilder.append("=");
-                            whereBuilder.append("?");
-                            whereBuilder.append(" ;");
-                            whereCondition.add(fieldValue);
-                        }
+    /**
+     * 根据要更新的字段生成 update ... set a=?,b=? where id=? 语句，主键值追加在每行参数的最后
+     *
+     * @param meta    实体元数据
+     * @param columns 要更新的字段
+     * @param objects 实体对象集合
+     * @return SqlAndParamBean
+     */
+    private SqlAndParamBean generateBatchUpdateSqlAndParam(EntityMeta meta, List<EntityMeta.Column> columns, List<?> objects) {
+        EntityMeta.Column primaryKey = meta.getPrimaryKey();
+        if (null == primaryKey) {
+            throw new RuntimeException("实体没有主键ID字段....");
+        }
 
-                    });
-                }
-                clazz[0] = clazz[0].getSuperclass();
-            }
+        StringBuilder updateBuilder = new StringBuilder("update ").append(meta.getTableName()).append(" set ");
+        for (EntityMeta.Column column : columns) {
+            updateBuilder.append(column.getName());
+            updateBuilder.append("=?");
+            updateBuilder.append(",");
+        }
+        if (updateBuilder.toString().endsWith(",")) {
+            updateBuilder.deleteCharAt(updateBuilder.length() - 1);
+        }
+        updateBuilder.append(" where ").append(primaryKey.getName()).append("=").append("?").append(" ;");
 
-            if (updateBuilder.toString().endsWith(",")) {
-                updateBuilder.deleteCharAt(updateBuilder.length() - 1);
+        List<Object[]> parameters = new ArrayList<>(objects.size());
+        for (Object object : objects) {
+            Object[] values = new Object[columns.size() + 1];
+            for (int i = 0; i < columns.size(); i++) {
+                values[i] = columns.get(i).getValue(object);
             }
-            updateBuilder.append(whereBuilder);
-            sqlString.set(updateBuilder.toString());
+            Object primaryKeyValue = primaryKey.getValue(object);
+            checkPrimaryKeyValue(primaryKeyValue);
+            values[columns.size()] = primaryKeyValue;
+            parameters.add(values);
+        }
 
-            values.addAll(whereCondition);
-            parameters.add(values.toArray());
-        });
+        return new SqlAndParamBean(updateBuilder.toString(), null, parameters);
+    }
 
-        return new SqlAndParamBean(sqlString.get(), null, parameters);
+    private void checkPrimaryKeyValue(Object primaryKeyValue) {
+        if (Objects.isNull(primaryKeyValue) || StringUtils.isEmpty(primaryKeyValue.toString())) {
+            throw new RuntimeException("主键ID的值不能为空....");
+        }
     }
 
     /**
@@ -847,7 +1157,7 @@ public class SqlUtil {
         boolean isFirst = true;
         for (Condition condition : conditions) {
 
-            if (Objects.isNull(condition) && Objects.nonNull(condition.getValue()))
+            if (Objects.isNull(condition))
                 continue;
 
             // 添加逻辑运算符
@@ -858,7 +1168,7 @@ public class SqlUtil {
                 conditionStrBuilder.append(" ").append(logicalOperator).append(" ");
             }
 
-            // 构建条件部分："name = ?"、"name IN (?,?,?)"、"name BETWEEN ？AND ？"、"name LIKE ?"
+            // 构建条件部分："name = ?"、"name = any(?)"、"name BETWEEN ？AND ？"、"name LIKE ?"
             conditionStrBuilder.append(condition.toString(null));
         }
 
@@ -940,25 +1250,13 @@ public class SqlUtil {
      * @throws IllegalAccessException   没有访问权限的异常
      */
     public Map<String, Object> getAllFields(Object object, boolean isnullValuesReturn) throws IllegalArgumentException, IllegalAccessException {
-        Map<String, Object> fieldAndValue = new HashMap<>();
-        Class<?> class1 = object.getClass();
-        while (class1 != Object.class) {
-            Field[] fields = class1.getDeclaredFields();
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (Modifier.isPrivate(field.getModifiers()) && !Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())
-                        && ReflectionUtil.isBaseType(field) && null == field.getAnnotation(Ignore.class) && null != field.get(object)) {
-                    String name = field.getName();
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    if (isnullValuesReturn) {
-                        fieldAndValue.put(name, value);
-                    } else if (null != value) {
-                        fieldAndValue.put(name, value);
-                    }
-                }
+        List<EntityMeta.Column> columns = EntityMeta.of(object.getClass()).getColumns();
+        Map<String, Object> fieldAndValue = new LinkedHashMap<>();
+        for (EntityMeta.Column column : columns) {
+            Object value = column.getValue(object);
+            if (null != value) {
+                fieldAndValue.put(column.getName(), value);
             }
-            class1 = class1.getSuperclass();
         }
         return fieldAndValue;
     }
@@ -971,21 +1269,10 @@ public class SqlUtil {
      * @throws IllegalAccessException 没有访问权限的异常
      */
     public Map<String, Object> getNewAllFields(Object object) throws IllegalArgumentException, IllegalAccessException {
-        Map<String, Object> fieldAndValue = new HashMap<>();
-        Class<?> class1 = object.getClass();
-        while (class1 != Object.class) {
-            Field[] fields = class1.getDeclaredFields();
-            for (Field field : fields) {
-                field.setAccessible(true);
-                if (Modifier.isPrivate(field.getModifiers()) && !Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())
-                        && ReflectionUtil.isBaseType(field) && null == field.getAnnotation(Ignore.class)) {
-                    String name = field.getName();
-                    field.setAccessible(true);
-                    Object value = field.get(object);
-                    fieldAndValue.put(name, value);
-                }
-            }
-            class1 = class1.getSuperclass();
+        List<EntityMeta.Column> columns = EntityMeta.of(object.getClass()).getColumns();
+        Map<String, Object> fieldAndValue = new LinkedHashMap<>();
+        for (EntityMeta.Column column : columns) {
+            fieldAndValue.put(column.getName(), column.getValue(object));
         }
         return fieldAndValue;
     }
@@ -998,17 +1285,29 @@ public class SqlUtil {
      * @return List
      */
     public List<Field> getAllEntityToDBFields(Class<?> clazz, Object object) {
-        Field[] fields = clazz.getDeclaredFields();
-        List<Field> fieldList = Arrays.stream(fields).collect(Collectors.toList());
-        return fieldList.stream().filter(field -> {
-            try {
-                field.setAccessible(true);
-                return ReflectionUtil.isBaseType(field) && !Modifier.isFinal(field.getModifiers()) && !Modifier.isStatic(field.getModifiers()) && Modifier.isPrivate(field.getModifiers()) && null == field.getAnnotation(Ignore.class) && null != field.get(object);
-            } catch (IllegalAccessException e) {
-                log.error("根据实体获取数据的字段错误：{}", ExceptionUtil.buildErrorMessage(e));
+        List<EntityMeta.Column> columns = EntityMeta.of(clazz).getDeclaredColumns();
+        List<Field> fieldList = new ArrayList<>(columns.size());
+        for (EntityMeta.Column column : columns) {
+            if (null != column.getValue(object)) {
+                fieldList.add(column.getField());
             }
-            return false;
-        }).collect(Collectors.toList());
+        }
+        return fieldList;
+    }
+
+    /**
+     * 按字段顺序读取实体对象的字段值
+     *
+     * @param columns 字段集合
+     * @param object  实体对象
+     * @return 字段值数组
+     */
+    public Object[] getColumnValues(List<EntityMeta.Column> columns, Object object) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).getValue(object);
+        }
+        return values;
     }
 
     /**
@@ -1018,33 +1317,7 @@ public class SqlUtil {
      * @return 表名
      */
     public String getTableNameByClass(Class<?> clazz) {
-        String tableName = "";
-
-        Table table = clazz.getAnnotation(Table.class);
-        if (table != null) {
-            tableName = table.name();
-        }
-        if (StringUtils.isEmpty(tableName)) {
-            if (table != null) {
-                Method[] methods = table.annotationType().getDeclaredMethods();
-                for (Method method : methods) {
-                    if (!method.isAccessible()) {
-                        method.setAccessible(true);
-                    }
-                    try {
-                        tableName = (String) method.invoke(table);
-                    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                        log.error(ExceptionUtil.buildErrorMessage(e));
-                    }
-                }
-            }
-        }
-
-        if (StringUtils.isEmpty(tableName)) {
-            tableName = TABLE_PREFIX + StringUtils.HumpToUnderline(clazz.getSimpleName());
-        }
-
-        return tableName;
+        return EntityMeta.of(clazz).getTableName();
     }
 
     /**
@@ -0,0 +1,177 @@
+package com.xxw.util.base.util;
+
+import com.xxw.base.util.ColumnarResult;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ColumnarResultTest {
+
+    private static final String[] NAMES = {"id", "total", "price", "city", "enabled"};
+
+    private static final int[] TYPES = {Types.INTEGER, Types.BIGINT, Types.NUMERIC, Types.VARCHAR, Types.BOOLEAN};
+
+    private static final Object[][] ROWS = {
+            {1, 10000000000L, new BigDecimal("1.50"), "beijing", true},
+            {null, null, null, null, null},
+            {3, 30L, new BigDecimal("2.25"), "shanghai", false},
+            {4, 40L, new BigDecimal("3"), "beijing", true},
+    };
+
+    @Test
+    public void readTest() throws Exception {
+        // 预计行数故意给小，覆盖扩容
+        ColumnarResult result = ColumnarResult.read(resultSet(NAMES, TYPES, ROWS), 1);
+        Assert.assertEquals(4, result.getRowCount());
+        Assert.assertEquals(5, result.getColumns().size());
+        Assert.assertNull(result.getColumn("isbn"));
+
+        ColumnarResult.IntColumn id = result.getIntColumn("id");
+        Assert.assertArrayEquals(new int[]{1, 0, 3, 4}, id.getValues());
+        Assert.assertTrue(id.isNull(1));
+        Assert.assertFalse(id.isNull(0));
+        Assert.assertEquals(1, id.getNullCount());
+        Assert.assertNull(id.getObject(1));
+        Assert.assertEquals(8, id.sum());
+
+        // bigint 不截断
+        ColumnarResult.LongColumn total = result.getLongColumn("total");
+        Assert.assertEquals(10000000000L, total.getLong(0));
+        Assert.assertEquals(0L, total.getLong(1));
+        Assert.assertTrue(total.isNull(1));
+        Assert.assertEquals(10000000070L, total.sum());
+
+        // numeric 转成 double
+        ColumnarResult.DoubleColumn price = result.getDoubleColumn("price");
+        Assert.assertEquals(1.5, price.getDouble(0), 0);
+        Assert.assertEquals(6.75, price.sum(), 1e-9);
+        Assert.assertTrue(price.isNull(1));
+
+        ColumnarResult.StringColumn city = result.getStringColumn("city");
+        Assert.assertEquals(Arrays.asList("beijing", "shanghai"), city.getDictionary());
+        Assert.assertArrayEquals(new int[]{0, -1, 1, 0}, city.getCodes());
+        Assert.assertNull(city.getString(1));
+        Assert.assertEquals("beijing", city.getString(3));
+        Assert.assertEquals(1, city.getNullCount());
+
+        ColumnarResult.Column enabled = result.getColumn("enabled");
+        Assert.assertTrue(enabled instanceof ColumnarResult.ObjectColumn);
+        Assert.assertEquals(false, enabled.getObject(2));
+        Assert.assertTrue(enabled.isNull(1));
+    }
+
+    @Test
+    public void getRowTest() throws Exception {
+        ColumnarResult result = ColumnarResult.read(resultSet(NAMES, TYPES, ROWS), 0);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("id", 3);
+        expected.put("total", 30L);
+        expected.put("price", 2.25);
+        expected.put("city", "shanghai");
+        expected.put("enabled", false);
+        Assert.assertEquals(expected, result.getRow(2));
+
+        Map<String, Object> nullRow = result.getRow(1);
+        Assert.assertEquals(5, nullRow.size());
+        Assert.assertTrue(nullRow.containsKey("id"));
+        for (Object value : nullRow.values()) {
+            Assert.assertNull(value);
+        }
+        try {
+            result.getRow(4);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException expectedException) {
+            // 超出行数
+        }
+    }
+
+    @Test
+    public void wrongTypeTest() throws Exception {
+        ColumnarResult result = ColumnarResult.read(resultSet(NAMES, TYPES, ROWS), 0);
+        try {
+            result.getIntColumn("total");
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // total 是 LongColumn
+        }
+        try {
+            result.getStringColumn("isbn");
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 没有这一列
+        }
+    }
+
+    @Test
+    public void emptyTest() throws Exception {
+        ColumnarResult result = ColumnarResult.read(resultSet(NAMES, TYPES, new Object[0][]), 0);
+        Assert.assertEquals(0, result.getRowCount());
+        Assert.assertEquals(0, result.getIntColumn("id").getValues().length);
+        Assert.assertEquals(0, result.getStringColumn("city").getCodes().length);
+    }
+
+    /**
+     * 只实现 ColumnarResult 用到的方法的内存结果集
+     */
+    private static ResultSet resultSet(String[] names, int[] types, Object[][] rows) {
+        ResultSetMetaData md = (ResultSetMetaData) Proxy.newProxyInstance(ColumnarResultTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return names.length;
+                        case "getColumnName":
+                        case "getColumnLabel":
+                            return names[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        int[] cursor = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(ColumnarResultTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    switch (name) {
+                        case "getMetaData":
+                            return md;
+                        case "next":
+                            return ++cursor[0] < rows.length;
+                        case "wasNull":
+                            return wasNull[0];
+                        case "close":
+                            return null;
+                        default:
+                            break;
+                    }
+                    if (!name.startsWith("get") || null == args || !(args[0] instanceof Integer)) {
+                        throw new UnsupportedOperationException(name);
+                    }
+                    Object value = rows[cursor[0]][(Integer) args[0] - 1];
+                    wasNull[0] = null == value;
+                    switch (name) {
+                        case "getInt":
+                            return null == value ? 0 : ((Number) value).intValue();
+                        case "getLong":
+                            return null == value ? 0L : ((Number) value).longValue();
+                        case "getDouble":
+                            return null == value ? 0D : ((Number) value).doubleValue();
+                        case "getString":
+                            return null == value ? null : value.toString();
+                        case "getObject":
+                            return value;
+                        default:
+                            throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
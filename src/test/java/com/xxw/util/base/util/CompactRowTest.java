@@ -0,0 +1,43 @@
+package com.xxw.util.base.util;
+
+import com.xxw.base.util.CompactRow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompactRowTest {
+
+    @Test
+    public void compactRowTest() {
+        CompactRow.Header header = CompactRow.Header.of("id", "name", "id");
+        // 重名列只保留最后一列
+        Assert.assertEquals(2, header.size());
+        Map<String, Object> row = CompactRow.of(header, "aa", 2);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("name", "aa");
+        expected.put("id", 2);
+        Assert.assertEquals(expected, row);
+        Assert.assertEquals(expected.hashCode(), row.hashCode());
+        Assert.assertTrue(row.containsKey("id"));
+        Assert.assertNull(row.get("isbn"));
+        try {
+            row.put("isbn", "te");
+            Assert.fail();
+        } catch (UnsupportedOperationException expectedException) {
+            // 只读
+        }
+    }
+
+    @Test
+    public void valueCountTest() {
+        CompactRow.Header header = CompactRow.Header.of("id", "name");
+        try {
+            CompactRow.of(header, 1);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 值的个数与列数不一致
+        }
+    }
+}
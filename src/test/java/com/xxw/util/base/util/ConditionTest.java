@@ -0,0 +1,29 @@
+package com.xxw.util.base.util;
+
+import com.xxw.base.dao.SqlArray;
+import com.xxw.base.query.Condition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ConditionTest {
+
+    @Test
+    public void conditionInTest() {
+        List<Object> params = new ArrayList<>();
+        Condition condition = Condition.parse("id", Arrays.asList(1, 2, 3));
+        Assert.assertEquals("id = any(?)", condition.toString(params));
+        Assert.assertEquals(1, params.size());
+        Assert.assertEquals("int4", ((SqlArray) params.get(0)).getTypeName());
+        Assert.assertEquals(3, ((SqlArray) params.get(0)).size());
+
+        Condition literal = new Condition(false);
+        literal.setField("name");
+        literal.setOperator("IN");
+        literal.setValue("'a', 'b'");
+        Assert.assertEquals("name IN ('a', 'b')", literal.toString(null));
+    }
+}
@@ -1,13 +1,22 @@
 package com.xxw.util.base.util;
 
+import com.xxw.base.dao.BatchInsertWriter;
+import com.xxw.base.dao.EntityMeta;
+import com.xxw.base.dao.SqlAndParamBean;
+import com.xxw.base.query.Direction;
+import com.xxw.base.query.KeysetToken;
+import com.xxw.base.query.Order;
 import com.xxw.base.util.SqlUtil;
 import com.xxw.java8.bean.Book;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -40,4 +49,87 @@ public class SqlUtilTest {
         bookList.add(bookArr2);
         SqlUtil.transForm(bookList);
     }
+
+    @Test
+    public void generateBatchInsertSqlAndParamTest() throws Exception {
+        Book book1 = Book.builder().name("aa").releaseYear(2001).isbn("te").build();
+        Book book2 = Book.builder().name("bb").releaseYear(2002).isbn("df").build();
+        SqlAndParamBean bean = SqlUtil.generateBatchInsertSqlAndParam("tbl_book", Arrays.asList(book1, book2));
+        Assert.assertEquals("insert into tbl_book (name,releaseYear,isbn) values (?,?,?)", bean.getSql());
+        Assert.assertEquals(2, bean.getBatchParams().size());
+        Assert.assertArrayEquals(new Object[]{"bb", 2002, "df"}, bean.getBatchParams().get(1));
+    }
+
+    @Test
+    public void generateMultiRowInsertSqlTest() {
+        Book book = Book.builder().name("aa").releaseYear(2001).isbn("te").build();
+        List<EntityMeta.Column> columns = EntityMeta.of(Book.class).getNonNullColumns(book);
+        String sql = SqlUtil.generateMultiRowInsertSql("tbl_book", columns, 2);
+        Assert.assertEquals("insert into tbl_book (name,releaseYear,isbn) values (?,?,?),(?,?,?)", sql);
+        Assert.assertEquals(10922, new BatchInsertWriter(100000).rowsPerStatement(columns.size()));
+        Assert.assertEquals(500, new BatchInsertWriter(500).rowsPerStatement(columns.size()));
+    }
+
+    @Test
+    public void generateMultiRowUpsertSqlTest() {
+        EntityMeta meta = EntityMeta.of(Book.class);
+        List<EntityMeta.Column> columns = meta.getColumns();
+        List<EntityMeta.Column> updateColumns = Arrays.asList(meta.getColumn("name"), meta.getColumn("releaseYear"));
+        String sql = SqlUtil.generateMultiRowUpsertSql("public.tbl_book", columns, 2, "isbn", updateColumns);
+        Assert.assertEquals("insert into public.tbl_book (name,releaseYear,isbn) values (?,?,?),(?,?,?) on conflict (isbn) do update set"
+                + " name = coalesce(excluded.name, tbl_book.name), releaseYear = coalesce(excluded.releaseYear, tbl_book.releaseYear)", sql);
+    }
+
+    @Test
+    public void generateMultiRowUpdateSqlTest() {
+        EntityMeta meta = EntityMeta.of(Book.class);
+        List<EntityMeta.Column> columns = Arrays.asList(meta.getColumn("isbn"), meta.getColumn("name"), meta.getColumn("releaseYear"));
+        String sql = SqlUtil.generateMultiRowUpdateSql("tbl_book", columns, new String[]{"character varying", null, "integer"}, 2, true);
+        Assert.assertEquals("update tbl_book set name = coalesce(v.name, tbl_book.name), releaseYear = coalesce(v.releaseYear, tbl_book.releaseYear)"
+                + " from (values (?::character varying,?,?::integer),(?::character varying,?,?::integer)) as v (isbn,name,releaseYear)"
+                + " where tbl_book.isbn = v.isbn", sql);
+    }
+
+    @Test
+    public void generateBatchDeleteSqlTest() {
+        Assert.assertEquals("delete from tbl_book where isbn in( ? , ? )",
+                SqlUtil.generateBatchDeleteSqlForTableName("tbl_book", "isbn", Arrays.asList("te", "df")));
+        Assert.assertEquals("delete from tbl_book where isbn = any(?)", SqlUtil.generateDeleteByArraySql("tbl_book", "isbn"));
+    }
+
+    @Test
+    public void generateKeysetSqlAndParamTest() {
+        Order[] orders = new Order[]{new Order("u.createTime", Direction.DESC), new Order("id", Direction.DESC)};
+        Object[] lastKeys = KeysetToken.decode(KeysetToken.encode(new Object[]{"2020-01-01 00:00:00", 42}));
+        SqlAndParamBean bean = SqlUtil.generateKeysetSqlAndParam("select * from tbl_user u where status = ?", new Object[]{1}, orders, lastKeys, 20);
+        Assert.assertEquals("select * from (select * from tbl_user u where status = ?) keyset_t where (createTime, id) < (?, ?)"
+                + " order by createTime DESC, id DESC limit ?", bean.getSql());
+        Assert.assertArrayEquals(new Object[]{1, "2020-01-01 00:00:00", 42, 21}, bean.getParams());
+        // 形状相同的调用复用缓存的sql文本
+        SqlAndParamBean next = SqlUtil.generateKeysetSqlAndParam("select * from tbl_user u where status = ?", new Object[]{2}, orders, new Object[]{"2020-01-02 00:00:00", 7}, 50);
+        Assert.assertSame(bean.getSql(), next.getSql());
+        Assert.assertArrayEquals(new Object[]{2, "2020-01-02 00:00:00", 7, 51}, next.getParams());
+    }
+
+    public interface BookName {
+        String getName();
+
+        String getIsbn();
+    }
+
+    @Test
+    public void projectionTest() {
+        // 接口方法的顺序不固定，按集合比较
+        Assert.assertEquals(new HashSet<>(Arrays.asList("name", "isbn")), new HashSet<>(SqlUtil.projectionFields(BookName.class)));
+        Assert.assertEquals("*", SqlUtil.selectList(null));
+        Assert.assertEquals("name,isbn", SqlUtil.selectList(Arrays.asList("name", "isbn")));
+        SqlAndParamBean bean = SqlUtil.generateSearchSqlAndParam(Arrays.asList("name", "isbn"), "tbl_book", null, null);
+        Assert.assertTrue(bean.getSql().startsWith("select name,isbn from tbl_book"));
+        try {
+            SqlUtil.selectList(Arrays.asList("name; drop table tbl_book"));
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+            // 字段名不合法
+        }
+    }
 }